@@ -0,0 +1,68 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+package com.wmorellato.mandalas.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import com.wmorellato.mandalas.components.MandalaAttributes;
+import com.wmorellato.mandalas.config.ConfigurationManager;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+
+/**
+ * Setup shared by the benchmarks. Everything is built from the default
+ * configuration of the plugin, read with the Bukkit API but without a server.
+ */
+final class Benchmarks {
+    // every benchmark draws the same mandala, so runs can be compared
+    static final long SEED = 42;
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Load the default configuration with a given number of elements. The fixed
+     * elements are kept and random ones are added up to the number asked for.
+     * Mandalas are painted on a single thread, so each stage is measured alone.
+     *
+     * @param elements total number of elements of a mandala
+     * @return the {@link ConfigurationManager} of the benchmarks.
+     */
+    static ConfigurationManager loadConfig(int elements) throws IOException {
+        YamlConfiguration fc;
+
+        try (InputStream in = Benchmarks.class.getResourceAsStream("/config.yml")) {
+            fc = YamlConfiguration.loadConfiguration(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+
+        fc.set("generation.render_threads", 1);
+        ConfigurationManager config = new ConfigurationManager(fc);
+        fc.set("mandala.elements.random.count", Math.max(0, elements - config.getNumberOfFixedElements()));
+
+        return config;
+    }
+
+    static MandalaAttributes attributes(int radius, int sections) {
+        return new MandalaAttributes(SEED, radius, sections, 0);
+    }
+}
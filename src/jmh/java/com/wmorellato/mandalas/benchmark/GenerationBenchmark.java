@@ -0,0 +1,103 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+package com.wmorellato.mandalas.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.wmorellato.mandalas.components.Mandala;
+import com.wmorellato.mandalas.components.MandalaElement;
+import com.wmorellato.mandalas.config.ConfigurationManager;
+import com.wmorellato.mandalas.drawing.ScanlineRasterizer;
+import com.wmorellato.mandalas.raster.MandalaRaster;
+import com.wmorellato.mandalas.raster.SpanRaster;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of generating a mandala, as a whole and stage by stage: creating the
+ * elements and painting them ({@link #generate()}), painting elements already
+ * created ({@link #distribute()}) and turning the pixels into spans
+ * ({@link #encode()}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class GenerationBenchmark {
+    @Param({ "50", "200", "1000" })
+    int radius;
+
+    @Param({ "4", "8", "32" })
+    int sections;
+
+    @Param({ "5", "15", "40" })
+    int elements;
+
+    ConfigurationManager mConfig;
+    MandalaElement[] mElements;
+    MandalaRaster mRaster;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        mConfig = Benchmarks.loadConfig(elements);
+
+        Mandala mandala = new Mandala(mConfig, Benchmarks.attributes(radius, sections));
+        mElements = mandala.getElements();
+        mRaster = mandala.getRaster();
+    }
+
+    @Benchmark
+    public Mandala generate() {
+        return new Mandala(mConfig, Benchmarks.attributes(radius, sections));
+    }
+
+    @Benchmark
+    public MandalaRaster distribute() {
+        MandalaRaster raster = MandalaRaster.create(mRaster.getWidth(), mRaster.getHeight());
+        ScanlineRasterizer rasterizer = new ScanlineRasterizer(raster.getLabels(), raster.getOffset(),
+                raster.getStride(), raster.getWidth(), raster.getHeight());
+
+        for (int i = 0; i < mElements.length; i++) {
+            rasterizer.setLabel(MandalaRaster.labelOf(i));
+            mElements[i].distribute(rasterizer);
+        }
+
+        return raster;
+    }
+
+    @Benchmark
+    public SpanRaster encode() {
+        return SpanRaster.of(mRaster);
+    }
+}
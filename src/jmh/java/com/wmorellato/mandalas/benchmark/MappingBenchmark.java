@@ -0,0 +1,94 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+package com.wmorellato.mandalas.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.wmorellato.mandalas.BlockMapper;
+import com.wmorellato.mandalas.components.Mandala;
+import com.wmorellato.mandalas.raster.IntIntMap;
+import com.wmorellato.mandalas.raster.MandalaRaster;
+import com.wmorellato.mandalas.raster.RasterStats;
+import com.wmorellato.mandalas.raster.SpanRaster;
+
+import org.bukkit.Material;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of mapping a mandala to blocks before it is placed: counting the pixels
+ * of each label ({@link #countLabels()}) and turning the counts into blocks of
+ * each material ({@link #mapPixelsToMaterials()}), as {@link BlockMapper} does
+ * for a raster it has not seen before. Placing the blocks needs a world and is
+ * not measured here.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class MappingBenchmark {
+    private static final Material[] MATERIALS = { Material.ORANGE_WOOL, Material.YELLOW_WOOL, Material.BROWN_WOOL,
+            Material.GREEN_WOOL };
+
+    @Param({ "50", "200", "1000" })
+    int radius;
+
+    @Param({ "4", "8", "32" })
+    int sections;
+
+    @Param({ "5", "15", "40" })
+    int elements;
+
+    SpanRaster mSpans;
+    Material[] mPalette = new Material[MandalaRaster.MAX_LABELS];
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        mSpans = new Mandala(Benchmarks.loadConfig(elements), Benchmarks.attributes(radius, sections)).getSpans();
+        mPalette[MandalaRaster.BACKGROUND] = Material.AIR;
+
+        for (int i = 1; i < mPalette.length; i++) {
+            mPalette[i] = MATERIALS[i % MATERIALS.length];
+        }
+    }
+
+    @Benchmark
+    public RasterStats countLabels() {
+        return RasterStats.of(mSpans);
+    }
+
+    @Benchmark
+    public IntIntMap mapPixelsToMaterials() {
+        return RasterStats.of(mSpans).countByMaterial(mPalette);
+    }
+}
@@ -0,0 +1,111 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+package com.wmorellato.mandalas.benchmark;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.wmorellato.mandalas.components.Mandala;
+import com.wmorellato.mandalas.components.MandalaElement;
+import com.wmorellato.mandalas.drawing.ScanlineRasterizer;
+import com.wmorellato.mandalas.raster.MandalaRaster;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of drawing the copies of every element of a mandala, with the default
+ * stroke of Java2D into an image ({@link #java2d()}) and with the
+ * {@link ScanlineRasterizer} into a buffer of labels ({@link #scanline()}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrokeBenchmark {
+    @Param({ "50", "200", "1000" })
+    int radius;
+
+    @Param({ "8", "32" })
+    int sections;
+
+    MandalaElement[] mElements;
+    BufferedImage mImage;
+    Graphics2D mGraphics;
+    MandalaRaster mRaster;
+    ScanlineRasterizer mRasterizer;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Mandala mandala = new Mandala(Benchmarks.loadConfig(15), Benchmarks.attributes(radius, sections));
+        int size = radius * 2 + 1;
+
+        mElements = mandala.getElements();
+        mImage = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        mGraphics = mImage.createGraphics();
+        mRaster = MandalaRaster.create(size, size);
+        mRasterizer = new ScanlineRasterizer(mRaster.getLabels(), mRaster.getOffset(), mRaster.getStride(), size,
+                size);
+
+        // the polylines are built once per element, outside of the measurements
+        for (MandalaElement element : mElements) {
+            element.getPolyline();
+        }
+    }
+
+    @Benchmark
+    public BufferedImage java2d() {
+        for (int i = 0; i < mElements.length; i++) {
+            mGraphics.setColor(new Color(i + 1));
+
+            for (AffineTransform at : mElements[i].getCopyTransforms()) {
+                mGraphics.draw(at.createTransformedShape(mElements[i].getShape()));
+            }
+        }
+
+        return mImage;
+    }
+
+    @Benchmark
+    public MandalaRaster scanline() {
+        for (int i = 0; i < mElements.length; i++) {
+            mRasterizer.setLabel(MandalaRaster.labelOf(i));
+            mElements[i].distribute(mRasterizer);
+        }
+
+        return mRaster;
+    }
+}
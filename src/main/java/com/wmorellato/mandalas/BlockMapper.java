@@ -19,127 +19,446 @@ along with this program.  If not, see <https://www.gnu.org/licenses/>.
 package com.wmorellato.mandalas;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import com.wmorellato.mandalas.exceptions.CenterNotDefinedException;
 import com.wmorellato.mandalas.exceptions.RadiusNotDefinedException;
+import com.wmorellato.mandalas.placement.ChunkPreloader;
+import com.wmorellato.mandalas.placement.PlacementJob;
+import com.wmorellato.mandalas.placement.PlacementScheduler;
+import com.wmorellato.mandalas.placement.RegionBackup;
+import com.wmorellato.mandalas.placement.RegionSnapshot;
+import com.wmorellato.mandalas.placement.UndoJournal;
+import com.wmorellato.mandalas.raster.IntIntMap;
+import com.wmorellato.mandalas.raster.MandalaRaster;
+import com.wmorellato.mandalas.raster.RasterStats;
+import com.wmorellato.mandalas.raster.SpanRaster;
 import com.wmorellato.mandalas.selection.RegionSelection;
 
+import org.bukkit.ChatColor;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockPhysicsEvent;
 
 /**
- * Class that effectively draw the mandala in the world, mapping from the RGB
- * pixels to actual blocks.
+ * Class that effectively draw the mandala in the world, mapping from the
+ * labels of the pixels to actual blocks. The blocks are not placed all at
+ * once: the mapper is a {@link PlacementJob} drained by the
+ * {@link PlacementScheduler} over as many ticks as needed. Before placing
+ * anything it loads the chunks of the region and cuts the spans of the
+ * mandala into runs that fit in a chunk, so the blocks are written one chunk
+ * at a time.
+ *
+ * With physics turned off, blocks are written without updating their
+ * neighbours, which are mostly other blocks of the mandala anyway. Only the
+ * blocks on the edge of the mandala are written with physics, after every
+ * other block, so the world around the mandala still reacts to it: the blocks
+ * next to the border of the region, and the blocks of the elements next to the
+ * background.
  */
-public class BlockMapper {
-    // this value (0xff000000, or black) is the color value the Graphics2D set to
-    // pixels not set to anything.
-    private int backgroudnValue = -16777216;
-
+public class BlockMapper extends PlacementJob {
     static ArrayList<Material> mAvailableMaterials;
     public static ArrayList<String> AVAILABLE_MATERIALS;
+    // block data of each material, only used on the main thread
+    private static final EnumMap<Material, BlockData> BLOCK_DATA = new EnumMap<>(Material.class);
 
-    HashMap<Integer, Material> mMaterials = new HashMap<>();
+    // material of each label, the background is always air
+    Material[] mPalette = new Material[MandalaRaster.MAX_LABELS];
+    // number of blocks of each material, by ordinal
+    IntIntMap mMaterialCounts;
+    // block data of each label, created when the job is submitted
+    BlockData[] mBlockData;
 
     RegionSelection mRegion;
-    int[][] mRGBPixels;
-
-    public BlockMapper(RegionSelection region, Material[] materials, int[][] rgbPixels) {
+    SpanRaster mRaster;
+    RasterStats mStats;
+
+    // state of the placement, fixed when the job is submitted
+    Block mFirstBlock;
+    int mSize;
+    // offset, in blocks, of one step along a row and one step along a column
+    int[] mRowStep;
+    int[] mColStep;
+    int mMinX, mMinZ, mMaxX, mMaxZ;
+    Executor mWorker;
+    boolean mSkipUnchanged = false;
+    boolean mPhysics = true;
+    // counts the neighbour updates caused by the blocks written with physics
+    PhysicsCounter mPhysicsCounter = new PhysicsCounter();
+    // player whose undo history records this placement, if any
+    UUID mUndoOwner;
+
+    // chunks of the region, loaded before the first block is placed
+    ChunkPreloader mChunks;
+    // runs of blocks to place, grouped by chunk, see RunList
+    CompletableFuture<int[]> mAnalysis;
+    CompletableFuture<RegionBackup> mBackup;
+    int[] mRuns;
+    long mBlocksToPlace;
+    // current run and position inside it
+    int mRun = 0;
+    int mOffset = 0;
+
+    public BlockMapper(RegionSelection region, Material[] materials, SpanRaster raster) {
         mRegion = region;
-        mRGBPixels = rgbPixels;
+        mRaster = raster;
+        mStats = raster.getStats();
 
         mapPixelsToMaterials(materials);
     }
 
     /**
-     * Map each possible value of a pixel to a Material
-     * 
-     * @throws CenterNotDefinedException
-     * @throws RadiusNotDefinedException
+     * Map each possible label of a pixel to a Material. The labels are the
+     * indexes of the elements, so there is no need to look at the pixels.
      */
     private void mapPixelsToMaterials(Material[] materials) {
-        ArrayList<Integer> distinct = new ArrayList<>();
+        mPalette[MandalaRaster.BACKGROUND] = Material.AIR;
 
-        for (int i = 0; i < mRegion.getRadius() * 2 + 1; i++) {
-            for (int j = 0; j < mRegion.getRadius() * 2 + 1; j++) {
-                if (!distinct.contains(mRGBPixels[i][j])) {
-                    distinct.add(mRGBPixels[i][j]);
-                }
-            }
+        for (int i = 1; i < mPalette.length; i++) {
+            mPalette[i] = materials[i % materials.length];
         }
 
-        backgroudnValue = distinct.get(0);
-        mMaterials.put(distinct.get(0), Material.AIR);
-        for (int i = 1; i < distinct.size(); i++) {
-            mMaterials.put(distinct.get(i), materials[i % materials.length]);
-        }
+        mMaterialCounts = mStats.countByMaterial(mPalette);
+    }
+
+    /**
+     * Get how many blocks of a material this mandala will place.
+     * 
+     * @param material
+     * @return number of blocks of the material.
+     */
+    public int getBlockCount(Material material) {
+        return mMaterialCounts.get(material.ordinal(), 0);
+    }
+
+    /**
+     * Get the total number of blocks written by this mandala, including the air
+     * around the shapes.
+     * 
+     * @return number of blocks in the region.
+     */
+    public long getTotalBlocks() {
+        return mStats.getTotal();
     }
 
     /**
-     * Replace the blocks on the specified region in the world by the corresponding
-     * pixels of the mandala image on the plane specified by the region.
+     * Get the number of blocks that are not air.
      * 
+     * @return number of blocks covered by the elements of the mandala.
+     */
+    public long getSolidBlocks() {
+        return getTotalBlocks() - getBlockCount(Material.AIR);
+    }
+
+    /**
+     * Queue the replacement of the blocks on the specified region in the world by
+     * the corresponding pixels of the mandala image on the plane specified by the
+     * region. The region is read at this moment, so later changes to the player
+     * selection do not affect a mandala being placed.
+     * 
+     * @param scheduler the scheduler that will place the blocks
+     * @param worker    executor used to sort (and compare) the blocks before
+     *                  they are placed
+     * @param player    player to be notified when the mandala is done
      * @throws CenterNotDefinedException
      * @throws RadiusNotDefinedException
      */
-    public void drawMandala() throws RadiusNotDefinedException, CenterNotDefinedException {
-        switch (mRegion.getDrawingPlane()) {
-            case XY:
-                drawOnXYPlane();
-                break;
-            case XZ:
-                drawOnXZPlane();
-                break;
-            case YZ:
-                drawOnYZPlane();
-                break;
+    public void drawMandala(PlacementScheduler scheduler, Executor worker, Player player)
+            throws RadiusNotDefinedException, CenterNotDefinedException {
+        mFirstBlock = mRegion.getFirstBlock();
+        mSize = mRegion.getRadius() * 2 + 1;
+        mWorker = worker;
+
+        mRowStep = mRegion.getRowStep();
+        mColStep = mRegion.getColStep();
+        mBlockData = new BlockData[mPalette.length];
+
+        for (int i = 0; i < mPalette.length; i++) {
+            mBlockData[i] = BLOCK_DATA.computeIfAbsent(mPalette[i], Material::createBlockData);
         }
+
+        int x0 = mFirstBlock.getX();
+        int z0 = mFirstBlock.getZ();
+        int x1 = x0 + (mSize - 1) * (mRowStep[0] + mColStep[0]);
+        int z1 = z0 + (mSize - 1) * (mRowStep[2] + mColStep[2]);
+        mMinX = Math.min(x0, x1);
+        mMaxX = Math.max(x0, x1);
+        mMinZ = Math.min(z0, z1);
+        mMaxZ = Math.max(z0, z1);
+
+        setOwner(player);
+        scheduler.submit(this);
+    }
+
+    /**
+     * Only place the blocks that do not hold their target material yet. The world
+     * is copied when the mandala reaches the front of the placement queue and
+     * compared with the mandala on the worker executor.
+     * 
+     * @param skip
+     */
+    public void skipUnchangedBlocks(boolean skip) {
+        mSkipUnchanged = skip;
+    }
+
+    /**
+     * Write the blocks with or without physics. Without physics, only the blocks
+     * on the edge of the mandala update their neighbours, once the rest of the
+     * mandala is in place.
+     * 
+     * @param physics
+     */
+    public void applyPhysics(boolean physics) {
+        mPhysics = physics;
+    }
+
+    /**
+     * Record the blocks overwritten by this mandala in the undo history of a
+     * player. The region is copied with the chunks when the mandala reaches the
+     * front of the queue, and compressed on the worker executor.
+     * 
+     * @param player
+     */
+    public void recordUndo(Player player) {
+        mUndoOwner = player.getUniqueId();
     }
 
-    private void drawOnXYPlane() throws RadiusNotDefinedException, CenterNotDefinedException {
-        Block firstBlock = mRegion.getFirstBlock();
+    /**
+     * Load the chunks of the region a few per tick, then split the spans by chunk
+     * (and drop the unchanged blocks) on the worker executor. The blocks to be
+     * overwritten are backed up at the same time, if requested.
+     */
+    @Override
+    protected boolean prepare() {
+        UndoJournal journal = getPlugin().getUndoJournal();
+        boolean backup = mUndoOwner != null && journal.isEnabled();
+
+        if (mChunks == null) {
+            mChunks = new ChunkPreloader(getPlugin(), mFirstBlock.getWorld(), mMinX, mMinZ, mMaxX, mMaxZ);
+
+            // the copy is taken as the chunks are loaded, a few per tick
+            if (mSkipUnchanged || backup) {
+                mChunks.takeSnapshots(mFirstBlock, mRowStep, mColStep, mSize);
+            }
+        }
+
+        if (!mChunks.loadNext(getPlugin().getConfigManager().getChunksPerTick())) {
+            return false;
+        }
 
-        for (int x = 0; x < mRegion.getRadius() * 2 + 1; x++) {
-            for (int y = 0; y < mRegion.getRadius() * 2 + 1; y++) {
-                int pixel = mRGBPixels[x][y];
+        if (mAnalysis == null) {
+            RegionSnapshot snapshot = mChunks.getSnapshot();
 
-                Block b = firstBlock.getRelative(x, -y, 0);
-                b.setType(mMaterials.get(pixel));
+            mAnalysis = CompletableFuture.supplyAsync(() -> splitByChunk(mSkipUnchanged ? snapshot : null), mWorker);
+
+            if (backup) {
+                mBackup = CompletableFuture.supplyAsync(() -> journal.spillIfLarge(RegionBackup.capture(snapshot,
+                        mChunks.getWorld(), mFirstBlock, mRowStep, mColStep, mSize)), mWorker);
             }
+
+            return false;
         }
 
-        mRGBPixels = null;
+        if (!mAnalysis.isDone() || (mBackup != null && !mBackup.isDone())) {
+            return false;
+        }
+
+        if (mBackup != null) {
+            try {
+                getPlugin().getUndoJournal().record(mUndoOwner, mBackup.join());
+            } catch (CompletionException e) {
+                getPlugin().getLogger().warning("Could not back up the region of a mandala: " + e.getCause());
+                notifyOwner(String.format("%sThis mandala can not be undone.", ChatColor.RED));
+            }
+        }
+
+        try {
+            mRuns = mAnalysis.join();
+        } catch (CompletionException e) {
+            getPlugin().getLogger().warning("Could not sort the blocks of a mandala: " + e.getCause());
+            mRuns = spansAsRuns();
+        }
+
+        for (int i = 0; i < mRuns.length; i += RunList.FIELDS) {
+            mBlocksToPlace += mRuns[i + 2];
+        }
+
+        return true;
     }
 
-    private void drawOnXZPlane() throws RadiusNotDefinedException, CenterNotDefinedException {
-        Block firstBlock = mRegion.getFirstBlock();
+    /**
+     * Cut the spans of the mandala where they cross a chunk border and group the
+     * resulting runs by chunk, in the order the chunks were loaded. If a copy of
+     * the world is given, blocks that already hold their material are left out.
+     * 
+     * @param snapshot copy of the region, or null to place every block
+     * @return the runs, packed as in {@link RunList}.
+     */
+    private int[] splitByChunk(RegionSnapshot snapshot) {
+        RunList runs = new RunList();
+        Edges edges = mPhysics ? null : new Edges();
+        int x0 = mFirstBlock.getX();
+        int y0 = mFirstBlock.getY();
+        int z0 = mFirstBlock.getZ();
+
+        for (int row = 0; row < mSize; row++) {
+            for (int span = mRaster.getFirstSpan(row); span < mRaster.getFirstSpan(row + 1); span++) {
+                int label = mRaster.getLabel(span);
+                int end = mRaster.getStart(span) + mRaster.getLength(span);
+                int runStart = -1;
+                int runSlot = 0;
+
+                for (int col = mRaster.getStart(span); col < end; col++) {
+                    int x = x0 + row * mRowStep[0] + col * mColStep[0];
+                    int y = y0 + row * mRowStep[1] + col * mColStep[1];
+                    int z = z0 + row * mRowStep[2] + col * mColStep[2];
+                    int slot = mChunks.slotOf(x, z);
+                    boolean place = snapshot == null || snapshot.getType(row, col) != mPalette[label];
+
+                    if (runStart >= 0 && (!place || slot != runSlot)) {
+                        addRun(runs, edges, runSlot, row, runStart, col - runStart, label);
+                        runStart = -1;
+                    }
+
+                    if (place && runStart < 0) {
+                        runStart = col;
+                        runSlot = slot;
+                    }
+                }
 
-        for (int x = 0; x < mRegion.getRadius() * 2 + 1; x++) {
-            for (int z = 0; z < mRegion.getRadius() * 2 + 1; z++) {
-                int pixel = mRGBPixels[x][z];
+                if (runStart >= 0) {
+                    addRun(runs, edges, runSlot, row, runStart, end - runStart, label);
+                }
+            }
+        }
+
+        return runs.sortBySlot(mChunks.getChunkCount());
+    }
 
-                Block b = firstBlock.getRelative(x, 0, z);
-                b.setType(mMaterials.get(pixel));
+    /**
+     * Runs covering every span as it is, row by row.
+     */
+    private int[] spansAsRuns() {
+        RunList runs = new RunList();
+        Edges edges = mPhysics ? null : new Edges();
+
+        for (int row = 0; row < mSize; row++) {
+            for (int span = mRaster.getFirstSpan(row); span < mRaster.getFirstSpan(row + 1); span++) {
+                addRun(runs, edges, 0, row, mRaster.getStart(span), mRaster.getLength(span),
+                        mRaster.getLabel(span));
             }
         }
 
-        mRGBPixels = null;
+        return runs.sortBySlot(1);
     }
 
-    private void drawOnYZPlane() throws RadiusNotDefinedException, CenterNotDefinedException {
-        Block firstBlock = mRegion.getFirstBlock();
+    /**
+     * Add a run to the list. Without physics, the blocks of the run on the edge
+     * of the mandala are cut out and moved to {@link RunList#EDGE}, to be placed
+     * last.
+     */
+    private void addRun(RunList runs, Edges edges, int slot, int row, int col, int length, int label) {
+        if (edges == null) {
+            runs.add(slot, row, col, length, label);
+            return;
+        }
+
+        int end = col + length;
+        int start = col;
+        boolean edge = edges.isEdge(row, col, label);
 
-        for (int y = 0; y < mRegion.getRadius() * 2 + 1; y++) {
-            for (int z = 0; z < mRegion.getRadius() * 2 + 1; z++) {
-                int pixel = mRGBPixels[y][z];
+        // cut the run wherever it goes in or out of the edge
+        for (int c = col + 1; c <= end; c++) {
+            boolean next = c < end && edges.isEdge(row, c, label);
 
-                Block b = firstBlock.getRelative(0, -y, z);
-                b.setType(mMaterials.get(pixel));
+            if (c == end || next != edge) {
+                runs.add(edge ? RunList.EDGE : slot, row, start, c - start, label);
+                start = c;
+                edge = next;
             }
         }
+    }
 
-        mRGBPixels = null;
+    @Override
+    public boolean hasNext() {
+        return mRaster != null && mRun < mRuns.length;
+    }
+
+    /**
+     * Place the next block of the current run.
+     */
+    @Override
+    public void placeNext() {
+        int row = mRuns[mRun];
+        int col = mRuns[mRun + 1] + mOffset;
+
+        Block b = mFirstBlock.getRelative(row * mRowStep[0] + col * mColStep[0],
+                row * mRowStep[1] + col * mColStep[1], row * mRowStep[2] + col * mColStep[2]);
+        boolean physics = mPhysics || mRuns[mRun + 4] != 0;
+
+        mPhysicsCounter.mActive = physics;
+        b.setBlockData(mBlockData[mRuns[mRun + 3]], physics);
+        mPhysicsCounter.mActive = false;
+
+        if (++mOffset == mRuns[mRun + 2]) {
+            mRun += RunList.FIELDS;
+            mOffset = 0;
+        }
+    }
+
+    @Override
+    protected void onStart() {
+        getPlugin().getServer().getPluginManager().registerEvents(mPhysicsCounter, getPlugin());
+    }
+
+    @Override
+    protected void onComplete() {
+        mRaster = null;
+        mChunks.release();
+        HandlerList.unregisterAll(mPhysicsCounter);
+        super.onComplete();
+
+        if (mSkipUnchanged) {
+            notifyOwner(String.format("%s%d blocks were already in place and were skipped.",
+                    ChatColor.DARK_PURPLE, getTotalBlocks() - mBlocksToPlace));
+        }
+
+        if (getPlacedBlocks() > 0) {
+            notifyOwner(String.format("%s%.0f blocks/ms while placing, %.2f neighbour updates per block (physics %s).",
+                    ChatColor.DARK_PURPLE, getPlacedBlocks() / Math.max(getPlacingMillis(), 0.001),
+                    (double) mPhysicsCounter.mUpdates / getPlacedBlocks(), mPhysics ? "on" : "off"));
+        }
+    }
+
+    @Override
+    protected void onCancel() {
+        mRaster = null;
+        HandlerList.unregisterAll(mPhysicsCounter);
+
+        if (mChunks != null) {
+            mChunks.release();
+        }
+
+        // a backup not recorded yet would never be deleted
+        if (mBackup != null && mRuns == null) {
+            mBackup.thenAccept(RegionBackup::discard);
+        }
+    }
+
+    @Override
+    public String getDescription() {
+        return "Mandala";
     }
 
     /**
@@ -162,4 +481,141 @@ public class BlockMapper {
 
         return mAvailableMaterials.size();
     }
-}
\ No newline at end of file
+
+    /**
+     * Counts the physics events fired while a block is written with physics, that
+     * is the neighbour updates caused by the mandala. Only listens while the
+     * mapper is the job being placed.
+     */
+    private static class PhysicsCounter implements Listener {
+        boolean mActive = false;
+        long mUpdates = 0;
+
+        @EventHandler(priority = EventPriority.MONITOR)
+        public void onPhysics(BlockPhysicsEvent event) {
+            if (mActive) {
+                mUpdates++;
+            }
+        }
+    }
+
+    /**
+     * Finds the cells on the edge of the mandala: the cells next to the border of
+     * the region, and the cells of the elements next to the background. Rows are
+     * read from the raster as they are asked for, so they should be visited in
+     * order.
+     */
+    private class Edges {
+        // background cells of the rows above, at and below the current one
+        boolean[] mAbove = new boolean[mSize];
+        boolean[] mRow = new boolean[mSize];
+        boolean[] mBelow = new boolean[mSize];
+        int mCurrent = -2;
+
+        boolean isEdge(int row, int col, int label) {
+            int last = mSize - 1;
+
+            if (row == 0 || row == last || col == 0 || col == last) {
+                return true;
+            }
+
+            // the background only borders other cells written by this mandala
+            if (label == MandalaRaster.BACKGROUND) {
+                return false;
+            }
+
+            moveTo(row);
+
+            return mAbove[col] || mBelow[col] || mRow[col - 1] || mRow[col + 1];
+        }
+
+        private void moveTo(int row) {
+            if (row == mCurrent) {
+                return;
+            }
+
+            if (row == mCurrent + 1) {
+                boolean[] reused = mAbove;
+                mAbove = mRow;
+                mRow = mBelow;
+                mBelow = reused;
+                readRow(mBelow, row + 1);
+            } else {
+                readRow(mAbove, row - 1);
+                readRow(mRow, row);
+                readRow(mBelow, row + 1);
+            }
+
+            mCurrent = row;
+        }
+
+        private void readRow(boolean[] background, int row) {
+            for (int span = mRaster.getFirstSpan(row); span < mRaster.getFirstSpan(row + 1); span++) {
+                int start = mRaster.getStart(span);
+
+                Arrays.fill(background, start, start + mRaster.getLength(span),
+                        mRaster.getLabel(span) == MandalaRaster.BACKGROUND);
+            }
+        }
+    }
+
+    /**
+     * Growable list of runs of blocks, each packed as five ints: row, first
+     * column, length, label and 1 if the run is written with physics. The chunk
+     * slot of each run is kept apart and only used to sort them; the runs of
+     * {@link #EDGE} are the ones written with physics.
+     */
+    private static class RunList {
+        static final int FIELDS = 5;
+        // slot of the runs placed after every other run
+        static final int EDGE = Integer.MAX_VALUE;
+
+        int[] mRuns = new int[FIELDS * 256];
+        int[] mSlots = new int[256];
+        int mCount = 0;
+
+        void add(int slot, int row, int col, int length, int label) {
+            if (mCount == mSlots.length) {
+                mSlots = Arrays.copyOf(mSlots, mCount * 2);
+                mRuns = Arrays.copyOf(mRuns, mCount * 2 * FIELDS);
+            }
+
+            int base = mCount * FIELDS;
+            mRuns[base] = row;
+            mRuns[base + 1] = col;
+            mRuns[base + 2] = length;
+            mRuns[base + 3] = label;
+            mRuns[base + 4] = slot == EDGE ? 1 : 0;
+            mSlots[mCount++] = slot;
+        }
+
+        /**
+         * Counting sort of the runs by slot, keeping the order of the runs inside
+         * a slot.
+         */
+        int[] sortBySlot(int slotCount) {
+            // the edge goes in an extra slot after the others
+            int[] start = new int[slotCount + 2];
+
+            for (int k = 0; k < mCount; k++) {
+                if (mSlots[k] == EDGE) {
+                    mSlots[k] = slotCount;
+                }
+
+                start[mSlots[k] + 1]++;
+            }
+
+            for (int i = 1; i < start.length; i++) {
+                start[i] += start[i - 1];
+            }
+
+            int[] sorted = new int[mCount * FIELDS];
+
+            for (int k = 0; k < mCount; k++) {
+                System.arraycopy(mRuns, k * FIELDS, sorted, start[mSlots[k]]++ * FIELDS, FIELDS);
+            }
+
+            return sorted;
+        }
+    }
+}
@@ -18,11 +18,17 @@ along with this program.  If not, see <https://www.gnu.org/licenses/>.
 
 package com.wmorellato.mandalas;
 
+import java.io.File;
 import java.util.HashMap;
 
 import com.wmorellato.mandalas.commands.ConfigurationCommands;
+import com.wmorellato.mandalas.commands.JournalCommands;
 import com.wmorellato.mandalas.commands.MandalaCreationCommands;
 import com.wmorellato.mandalas.config.ConfigurationManager;
+import com.wmorellato.mandalas.generation.MandalaGenerator;
+import com.wmorellato.mandalas.generation.PregenerationPool;
+import com.wmorellato.mandalas.placement.PlacementScheduler;
+import com.wmorellato.mandalas.placement.UndoJournal;
 import com.wmorellato.mandalas.selection.RegionSelection;
 import com.wmorellato.mandalas.selection.SelectionTool;
 
@@ -35,12 +41,32 @@ import org.bukkit.plugin.java.JavaPlugin;
  */
 public class MandalasPlugin extends JavaPlugin {
     private ConfigurationManager mConfig;
+    private PlacementScheduler mPlacementScheduler;
+    private MandalaGenerator mGenerator;
+    private PregenerationPool mPregenerationPool;
+    private UndoJournal mUndoJournal;
     private final HashMap<Player, Boolean> debugees = new HashMap<Player, Boolean>();
     private final HashMap<Player, RegionSelection> mSelections = new HashMap<>();
 
     @Override
     public void onDisable() {
         getLogger().info("Disabling Mandalas plugin.");
+
+        if (mPlacementScheduler != null) {
+            mPlacementScheduler.shutdown();
+        }
+
+        if (mPregenerationPool != null) {
+            mPregenerationPool.shutdown();
+        }
+
+        if (mGenerator != null) {
+            mGenerator.shutdown();
+        }
+
+        if (mUndoJournal != null) {
+            mUndoJournal.clear();
+        }
     }
 
     @Override
@@ -57,6 +83,21 @@ public class MandalasPlugin extends JavaPlugin {
         // set listener for selection tool
         new SelectionTool(this);
 
+        // history of the placements, for /mundo and /mredo
+        mUndoJournal = new UndoJournal(new File(getDataFolder(), "undo"), mConfig.getUndoDepth(),
+                mConfig.getUndoSpillSize(), getLogger());
+
+        // placement of blocks over several ticks
+        mPlacementScheduler = new PlacementScheduler(this);
+        mPlacementScheduler.start();
+
+        // generation of mandalas on worker threads
+        mGenerator = new MandalaGenerator(this);
+
+        // mandalas generated in advance for /mandala
+        mPregenerationPool = new PregenerationPool(this);
+        mPregenerationPool.start();
+
         // executors
         setCommandExecutors();
 
@@ -82,9 +123,17 @@ public class MandalasPlugin extends JavaPlugin {
         getCommand("mandala").setExecutor(mandalaCommand);
         getCommand("ms").setExecutor(mandalaCommand);
         getCommand("mr").setExecutor(mandalaCommand);
+        getCommand("mbatch").setExecutor(mandalaCommand);
+        getCommand("mpreview").setExecutor(mandalaCommand);
+        getCommand("mcommit").setExecutor(mandalaCommand);
+        getCommand("mdiscard").setExecutor(mandalaCommand);
 
         ConfigurationCommands configCommand = new ConfigurationCommands(this);
         getCommand("mtool").setExecutor(configCommand);
+
+        JournalCommands journalCommand = new JournalCommands(this);
+        getCommand("mundo").setExecutor(journalCommand);
+        getCommand("mredo").setExecutor(journalCommand);
     }
 
     /**
@@ -112,4 +161,36 @@ public class MandalasPlugin extends JavaPlugin {
     public ConfigurationManager getConfigManager() {
         return mConfig;
     }
+
+    /**
+     * Return the scheduler that places the blocks in the world.
+     * @return
+     */
+    public PlacementScheduler getPlacementScheduler() {
+        return mPlacementScheduler;
+    }
+
+    /**
+     * Return the generator that creates mandalas on worker threads.
+     * @return
+     */
+    public MandalaGenerator getGenerator() {
+        return mGenerator;
+    }
+
+    /**
+     * Return the pool of mandalas generated in advance.
+     * @return
+     */
+    public PregenerationPool getPregenerationPool() {
+        return mPregenerationPool;
+    }
+
+    /**
+     * Return the undo history of the placements.
+     * @return
+     */
+    public UndoJournal getUndoJournal() {
+        return mUndoJournal;
+    }
 }
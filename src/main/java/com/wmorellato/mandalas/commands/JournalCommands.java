@@ -0,0 +1,98 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+package com.wmorellato.mandalas.commands;
+
+import com.wmorellato.mandalas.MandalasPlugin;
+import com.wmorellato.mandalas.placement.RegionBackup;
+import com.wmorellato.mandalas.placement.RestoreJob;
+import com.wmorellato.mandalas.placement.UndoJournal;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+/**
+ * CommandExecutor for the undo history: /mundo and /mredo.
+ */
+public class JournalCommands implements CommandExecutor {
+    private final MandalasPlugin mPlugin;
+
+    public JournalCommands(MandalasPlugin plugin) {
+        mPlugin = plugin;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (!(sender instanceof Player)) {
+            sender.sendMessage(ChatColor.RED + "You must be a player to run this command" + ChatColor.RESET);
+            return true;
+        }
+
+        Player player = (Player) sender;
+
+        if (!player.hasPermission("mandalas.create")) {
+            sender.sendMessage(ChatColor.RED + "You do not have permission to use this command." + ChatColor.RESET);
+            return true;
+        }
+
+        if (command.getName().equals("mundo")) {
+            return restore(player, true);
+        }
+
+        if (command.getName().equals("mredo")) {
+            return restore(player, false);
+        }
+
+        return false;
+    }
+
+    /**
+     * Queue the restoration of the last entry of the undo or redo history of a
+     * player.
+     * 
+     * @param player
+     * @param undo   true to undo, false to redo
+     * @return true, the command was handled.
+     */
+    private boolean restore(Player player, boolean undo) {
+        UndoJournal journal = mPlugin.getUndoJournal();
+
+        if (!journal.isEnabled()) {
+            player.sendMessage(String.format("%sUndo is disabled on this server.", ChatColor.RED));
+            return true;
+        }
+
+        RegionBackup backup = undo ? journal.popUndo(player.getUniqueId()) : journal.popRedo(player.getUniqueId());
+
+        if (backup == null) {
+            player.sendMessage(String.format("%sNothing to %s.", ChatColor.RED, undo ? "undo" : "redo"));
+            return true;
+        }
+
+        RestoreJob job = new RestoreJob(backup, journal, player.getUniqueId(), undo, mPlugin.getGenerator().workers());
+        job.setOwner(player);
+        mPlugin.getPlacementScheduler().submit(job);
+        player.sendMessage(String.format("%s%s queued.", ChatColor.DARK_PURPLE, job.getDescription()));
+
+        return true;
+    }
+}
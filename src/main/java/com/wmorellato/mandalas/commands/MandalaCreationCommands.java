@@ -19,24 +19,34 @@ along with this program.  If not, see <https://www.gnu.org/licenses/>.
 package com.wmorellato.mandalas.commands;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
 
 import com.wmorellato.mandalas.BlockMapper;
 import com.wmorellato.mandalas.MandalasPlugin;
 import com.wmorellato.mandalas.selection.RegionSelection;
-import com.wmorellato.mandalas.components.Mandala;
 import com.wmorellato.mandalas.components.MandalaAttributes;
+import com.wmorellato.mandalas.generation.MandalaBatch;
+import com.wmorellato.mandalas.generation.PregenerationPool;
 import com.wmorellato.mandalas.exceptions.CenterNotDefinedException;
 import com.wmorellato.mandalas.exceptions.RadiusNotDefinedException;
+import com.wmorellato.mandalas.placement.PreviewSession;
+import com.wmorellato.mandalas.raster.SpanRaster;
 
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
+import org.bukkit.block.Block;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
 
 /**
  * CommandExecutor for mandala creation related commands. This currently includes:
@@ -44,17 +54,37 @@ import org.bukkit.event.Listener;
  *  - Standard (random) creation
  *  - Creation using seed 
  *  - Setting radius by command line
+ *  - Batches of mandalas laid out on a grid
+ *  - Previews sent only to the player, placed or discarded afterwards
  */
 public class MandalaCreationCommands implements CommandExecutor, TabCompleter, Listener {
+    private static final int MAX_BATCH_SIZE = 256;
+
     private final MandalasPlugin mPlugin;
 
-    private Mandala mMandala;
     private Material[] mMaterials;
     private Player mPlayer;
     private RegionSelection mSelection;
+    private final HashMap<UUID, PreviewSession> mPreviews = new HashMap<>();
 
     public MandalaCreationCommands(MandalasPlugin plugin) {
         mPlugin = plugin;
+        mPlugin.getServer().getPluginManager().registerEvents(this, mPlugin);
+    }
+
+    /**
+     * Forget the preview of a player leaving the server. The client forgets the
+     * fake blocks by itself.
+     * 
+     * @param event
+     */
+    @EventHandler
+    public void onQuit(PlayerQuitEvent event) {
+        PreviewSession preview = mPreviews.remove(event.getPlayer().getUniqueId());
+
+        if (preview != null) {
+            preview.end();
+        }
     }
 
     @Override
@@ -71,6 +101,15 @@ public class MandalaCreationCommands implements CommandExecutor, TabCompleter, L
             return true;
         }
 
+        // these work on the preview, which keeps its own selection
+        if (command.getName().equals("mcommit")) {
+            return commitPreviewCommand();
+        }
+
+        if (command.getName().equals("mdiscard")) {
+            return discardPreviewCommand();
+        }
+
         mSelection = mPlugin.getPlayerSelection(mPlayer);
 
         // check if center is defined
@@ -94,6 +133,16 @@ public class MandalaCreationCommands implements CommandExecutor, TabCompleter, L
             return setRadiusCommand(args);
         }
 
+        // grid of mandalas
+        if (command.getName().equals("mbatch")) {
+            return batchCommand(args);
+        }
+
+        // preview only for the player
+        if (command.getName().equals("mpreview")) {
+            return previewCommand(args);
+        }
+
         return true;
     }
 
@@ -140,21 +189,19 @@ public class MandalaCreationCommands implements CommandExecutor, TabCompleter, L
             mMaterials[i] = Material.getMaterial(args[i]);
         }
 
-        MandalaAttributes attr = new MandalaAttributes(seed, mSelection.getRadius(), sections, mMaterials.length);
-        mMandala = new Mandala(mPlugin.getConfigManager(), attr);
-        BlockMapper bm = new BlockMapper(mSelection, mMaterials, mMandala.getRGBPixels());
-        
-        try {
-            bm.drawMandala();
-        } catch (RadiusNotDefinedException e) {
-            mPlayer.sendMessage(String.format("%sRadius not defined.", ChatColor.RED));
-            return false;
-        } catch (CenterNotDefinedException e) {
-            mPlayer.sendMessage(String.format("%sCenter not defined.", ChatColor.RED));
-            return false;
+        // any seed will do, so take a mandala generated in advance if there is one
+        PregenerationPool.Pregenerated ready = mPlugin.getPregenerationPool().take(mSelection.getRadius(), sections);
+
+        if (ready != null) {
+            MandalaAttributes attr = new MandalaAttributes(ready.getSeed(), mSelection.getRadius(), sections,
+                    mMaterials.length);
+            mPlugin.getGenerator().remember(attr, ready.getRaster(), ready.getFingerprint());
+            mPlayer.sendMessage(String.format("%sUsing mandala with seed %d.", ChatColor.DARK_PURPLE, ready.getSeed()));
+
+            return placeMandala(attr, CompletableFuture.completedFuture(ready.getRaster()));
         }
 
-        return true;
+        return createMandala(seed, sections);
     }
 
     /**
@@ -189,20 +236,302 @@ public class MandalaCreationCommands implements CommandExecutor, TabCompleter, L
             mMaterials[i] = m;
         }
 
-        MandalaAttributes attr = new MandalaAttributes(seed, mSelection.getRadius(), 8, mMaterials.length);
-        mMandala = new Mandala(mPlugin.getConfigManager(), attr);
-        BlockMapper bm = new BlockMapper(mSelection, mMaterials, mMandala.getRGBPixels());
+        return createMandala(seed, 8);
+    }
+
+    /**
+     * Generate the mandala on a worker thread and place it once it is ready.
+     * 
+     * @param seed
+     * @param sections
+     * @return true if the mandala was queued for generation.
+     */
+    private boolean createMandala(long seed, int sections) {
+        MandalaAttributes attr = new MandalaAttributes(seed, mSelection.getRadius(), sections, mMaterials.length);
+        mPlayer.sendMessage(String.format("%sGenerating mandala with seed %d...", ChatColor.DARK_PURPLE, seed));
+
+        return placeMandala(attr, mPlugin.getGenerator().generate(attr));
+    }
+
+    /**
+     * Once the raster of a mandala is ready, queue its blocks to be placed on the
+     * main thread. The player and the selection are copied here because this
+     * executor is shared by every player.
+     * 
+     * @param attr
+     * @param generation future holding the raster of the mandala
+     * @return true if the mandala was queued.
+     */
+    private boolean placeMandala(MandalaAttributes attr, CompletableFuture<SpanRaster> generation) {
+        final Player player = mPlayer;
+        final Material[] materials = mMaterials;
+        final RegionSelection selection = new RegionSelection(mSelection);
+
+        generation.whenCompleteAsync((raster, error) -> {
+            if (error != null) {
+                mPlugin.getLogger().warning(String.format("Could not generate mandala (%s): %s", attr, error));
+                player.sendMessage(String.format("%sCould not generate the mandala.", ChatColor.RED));
+                return;
+            }
+
+            try {
+                BlockMapper bm = new BlockMapper(selection, materials, raster);
+                player.sendMessage(String.format("%sPlacing %d blocks (%d not air).", ChatColor.DARK_PURPLE,
+                        bm.getTotalBlocks(), bm.getSolidBlocks()));
+
+                bm.skipUnchangedBlocks(mPlugin.getConfigManager().shouldSkipUnchangedBlocks());
+                bm.applyPhysics(mPlugin.getConfigManager().shouldApplyPhysics());
+                bm.recordUndo(player);
+                bm.drawMandala(mPlugin.getPlacementScheduler(), mPlugin.getGenerator().workers(), player);
+                mPlugin.getGenerator().export(attr, raster);
+            } catch (RadiusNotDefinedException e) {
+                player.sendMessage(String.format("%sRadius not defined.", ChatColor.RED));
+            } catch (CenterNotDefinedException e) {
+                player.sendMessage(String.format("%sCenter not defined.", ChatColor.RED));
+            } catch (RuntimeException e) {
+                // nothing else would report it, the future is not looked at again
+                mPlugin.getLogger().warning(String.format("Could not place mandala (%s): %s", attr, e));
+                player.sendMessage(String.format("%sCould not place the mandala.", ChatColor.RED));
+            }
+        }, mPlugin.getGenerator().mainThread());
+
+        return true;
+    }
+
+    /**
+     * Treat the 'mbatch' command: place a grid of mandalas starting at the center
+     * block, one after the other.
+     * 
+     * The arguments are the grid (ROWSxCOLS), the distance between two centers,
+     * the plane (xz, xy or yz), the seeds ("random", a list separated by commas
+     * or a range first..last) and the materials. Seeds are used in order and
+     * start over if there are fewer seeds than mandalas.
+     * 
+     * @param args
+     * @return true if the batch was started.
+     */
+    private boolean batchCommand(String args[]) {
+        if (mSelection.getRadius() == 0) {
+            mPlayer.sendMessage(String.format("%sRadius not defined.", ChatColor.RED));
+            return false;
+        }
+
+        if (args.length < 5) {
+            return false;
+        }
+
+        int rows, cols, spacing;
+        RegionSelection.Plane plane;
+        long[] seeds;
 
         try {
-            bm.drawMandala();
-        } catch (RadiusNotDefinedException e) {
+            String[] grid = args[0].toLowerCase().split("x");
+            rows = Integer.parseInt(grid[0]);
+            cols = grid.length > 1 ? Integer.parseInt(grid[1]) : 1;
+            spacing = Integer.parseInt(args[1]);
+        } catch (NumberFormatException e) {
+            mPlayer.sendMessage(String.format("%sInvalid grid or spacing provided.", ChatColor.RED));
+            return false;
+        }
+
+        // checked as a long, so a big grid can not overflow into a small one
+        if (rows < 1 || cols < 1 || (long) rows * cols > MAX_BATCH_SIZE || spacing < 1) {
+            mPlayer.sendMessage(String.format("%sThe grid must have between 1 and %d mandalas and a positive spacing.",
+                    ChatColor.RED, MAX_BATCH_SIZE));
+            return false;
+        }
+
+        try {
+            plane = RegionSelection.Plane.valueOf(args[2].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            mPlayer.sendMessage(String.format("%sInvalid plane \"%s\", use xz, xy or yz.", ChatColor.RED, args[2]));
+            return false;
+        }
+
+        int count = rows * cols;
+
+        try {
+            seeds = MandalaBatch.parseSeeds(args[3], count);
+        } catch (NumberFormatException e) {
+            mPlayer.sendMessage(String.format("%sInvalid seeds \"%s\".", ChatColor.RED, args[3]));
+            return false;
+        }
+
+        mMaterials = new Material[args.length - 4];
+
+        for (int i = 0; i < mMaterials.length; i++) {
+            Material m = Material.getMaterial(args[i + 4]);
+            if (m == null) {
+                mPlayer.sendMessage(String.format("%sInvalid material \"%s\".", ChatColor.RED, args[i + 4]));
+                return false;
+            }
+
+            mMaterials[i] = m;
+        }
+
+        ArrayList<MandalaBatch.Entry> entries = new ArrayList<>();
+        Block center = mSelection.getCentralBlock();
+
+        for (int k = 0; k < count; k++) {
+            int[] offset = MandalaBatch.gridOffset(k, cols, spacing, plane);
+            Block block = center.getRelative(offset[0], offset[1], offset[2]);
+
+            entries.add(new MandalaBatch.Entry(MandalaBatch.seedOf(seeds, k),
+                    new RegionSelection(block, plane, mSelection.getRadius())));
+        }
+
+        MandalaBatch batch = new MandalaBatch(mPlugin, mPlayer, entries, mMaterials,
+                mPlugin.getConfigManager().getNumberOfSections());
+        mPlayer.sendMessage(String.format("%sPlacing a batch of %d mandalas...", ChatColor.DARK_PURPLE, batch.size()));
+        batch.start();
+
+        return true;
+    }
+
+    /**
+     * Treat the 'mpreview' command: generate a mandala and send it only to the
+     * player, without changing the world. A previous preview of the player is
+     * discarded first.
+     * 
+     * @param args the seed (or "random") and the materials
+     * @return true if the preview was queued for generation.
+     */
+    private boolean previewCommand(String args[]) {
+        int sections = mPlugin.getConfigManager().getNumberOfSections();
+        long seed;
+
+        if (mSelection.getRadius() == 0) {
             mPlayer.sendMessage(String.format("%sRadius not defined.", ChatColor.RED));
             return false;
-        } catch (CenterNotDefinedException e) {
-            mPlayer.sendMessage(String.format("%sCenter not defined.", ChatColor.RED));
+        }
+
+        if (args.length < 2) {
             return false;
         }
 
+        mMaterials = new Material[args.length - 1];
+
+        for (int i = 0; i < mMaterials.length; i++) {
+            Material m = Material.getMaterial(args[i + 1]);
+            if (m == null) {
+                mPlayer.sendMessage(String.format("%sInvalid material \"%s\".", ChatColor.RED, args[i + 1]));
+                return false;
+            }
+
+            mMaterials[i] = m;
+        }
+
+        CompletableFuture<SpanRaster> generation;
+        MandalaAttributes attr;
+
+        if (args[0].equalsIgnoreCase("random")) {
+            PregenerationPool.Pregenerated ready = mPlugin.getPregenerationPool().take(mSelection.getRadius(),
+                    sections);
+            seed = ready != null ? ready.getSeed() : ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+            attr = new MandalaAttributes(seed, mSelection.getRadius(), sections, mMaterials.length);
+
+            if (ready != null) {
+                mPlugin.getGenerator().remember(attr, ready.getRaster(), ready.getFingerprint());
+                generation = CompletableFuture.completedFuture(ready.getRaster());
+            } else {
+                generation = mPlugin.getGenerator().generate(attr);
+            }
+        } else {
+            try {
+                seed = Long.parseLong(args[0]);
+            } catch (NumberFormatException e) {
+                mPlayer.sendMessage(String.format("%sInvalid seed provided.", ChatColor.RED));
+                return false;
+            }
+
+            attr = new MandalaAttributes(seed, mSelection.getRadius(), sections, mMaterials.length);
+            generation = mPlugin.getGenerator().generate(attr);
+        }
+
+        final Player player = mPlayer;
+        final Material[] materials = mMaterials;
+        final RegionSelection selection = new RegionSelection(mSelection);
+
+        generation.whenCompleteAsync((raster, error) -> {
+            if (error != null) {
+                mPlugin.getLogger().warning(String.format("Could not generate mandala (%s): %s", attr, error));
+                player.sendMessage(String.format("%sCould not generate the mandala.", ChatColor.RED));
+                return;
+            }
+
+            PreviewSession preview;
+
+            try {
+                preview = new PreviewSession(mPlugin, player, attr, selection, materials, raster,
+                        mPlugin.getConfigManager().getPreviewBlocksPerTick());
+            } catch (RadiusNotDefinedException e) {
+                player.sendMessage(String.format("%sRadius not defined.", ChatColor.RED));
+                return;
+            } catch (CenterNotDefinedException e) {
+                player.sendMessage(String.format("%sCenter not defined.", ChatColor.RED));
+                return;
+            } catch (RuntimeException e) {
+                mPlugin.getLogger().warning(String.format("Could not preview mandala (%s): %s", attr, e));
+                player.sendMessage(String.format("%sCould not preview the mandala.", ChatColor.RED));
+                return;
+            }
+
+            PreviewSession previous = mPreviews.put(player.getUniqueId(), preview);
+
+            // the new preview is only sent once the old one is gone, or the
+            // blocks sent back could hide it
+            if (previous != null && previous.isActive()) {
+                previous.discard(preview::start);
+            } else {
+                preview.start();
+            }
+
+            player.sendMessage(String.format("%sPreviewing mandala with seed %d. Use /mcommit to place it or "
+                    + "/mdiscard to remove it.", ChatColor.DARK_PURPLE, attr.seed));
+        }, mPlugin.getGenerator().mainThread());
+
+        mPlayer.sendMessage(String.format("%sGenerating preview with seed %d...", ChatColor.DARK_PURPLE, seed));
+
+        return true;
+    }
+
+    /**
+     * Treat the 'mcommit' command: place the previewed mandala in the world, using
+     * the raster of the preview.
+     * 
+     * @return true, the command was handled.
+     */
+    private boolean commitPreviewCommand() {
+        PreviewSession preview = mPreviews.remove(mPlayer.getUniqueId());
+
+        if (preview == null || !preview.isActive()) {
+            mPlayer.sendMessage(String.format("%sThere is no preview to place.", ChatColor.RED));
+            return true;
+        }
+
+        preview.end();
+        mMaterials = preview.getMaterials();
+        mSelection = preview.getSelection();
+
+        return placeMandala(preview.getAttributes(), CompletableFuture.completedFuture(preview.getRaster()));
+    }
+
+    /**
+     * Treat the 'mdiscard' command: show the player the real blocks again.
+     * 
+     * @return true, the command was handled.
+     */
+    private boolean discardPreviewCommand() {
+        PreviewSession preview = mPreviews.remove(mPlayer.getUniqueId());
+
+        if (preview == null || !preview.isActive()) {
+            mPlayer.sendMessage(String.format("%sThere is no preview to discard.", ChatColor.RED));
+            return true;
+        }
+
+        preview.discard(null);
+        mPlayer.sendMessage(String.format("%sPreview discarded.", ChatColor.DARK_PURPLE));
+
         return true;
     }
 
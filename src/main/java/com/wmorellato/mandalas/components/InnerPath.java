@@ -18,9 +18,8 @@ along with this program.  If not, see <https://www.gnu.org/licenses/>.
 
 package com.wmorellato.mandalas.components;
 
-import java.awt.*;
-
 import com.wmorellato.mandalas.drawing.CurveUtils;
+import com.wmorellato.mandalas.drawing.PointList;
 
 /**
  * This element corresponds to curves inside the mandala. These curves are
@@ -73,7 +72,7 @@ public class InnerPath extends MandalaElement {
 
     private void createConcavePath(int length, int minRadius, int maxRadius) {
         RandomPointGenerator rpg = new RandomPointGenerator(mAttributes.nextInt(Integer.MAX_VALUE));
-        Point[] points = rpg.generatePointsForReflection(length, length, mAttributes.CX, mAttributes.CY, minRadius,
+        PointList points = rpg.generatePointsForReflection(length, length, mAttributes.CX, mAttributes.CY, minRadius,
                 maxRadius, mAttributes.getSectionAngle());
 
         mShape = CurveUtils.generateInOrderQuadCurve(points, false);
@@ -81,7 +80,7 @@ public class InnerPath extends MandalaElement {
 
     private void createConvexPath(int length, int minRadius, int maxRadius) {
         RandomPointGenerator rpg = new RandomPointGenerator(mAttributes.nextInt(Integer.MAX_VALUE));
-        Point[] points = rpg.generateOrderedPath(length, mAttributes.CX, mAttributes.CY, minRadius, maxRadius,
+        PointList points = rpg.generateOrderedPath(length, mAttributes.CX, mAttributes.CY, minRadius, maxRadius,
                 mAttributes.getSectionAngle(), false, true);
 
         mShape = CurveUtils.generateInOrderQuadCurve(points, true);
@@ -89,7 +88,7 @@ public class InnerPath extends MandalaElement {
 
     private void createRandomPath(int length) {
         RandomPointGenerator rpg = new RandomPointGenerator(mAttributes.nextInt(Integer.MAX_VALUE));
-        Point[] points = rpg.generateRandomPoints(length, mAttributes.CX, mAttributes.CY, mAttributes.radius,
+        PointList points = rpg.generateRandomPoints(length, mAttributes.CX, mAttributes.CY, mAttributes.radius,
                 mAttributes.getSectionAngle());
 
         mShape = CurveUtils.generateInOrderQuadCurve(points, false);
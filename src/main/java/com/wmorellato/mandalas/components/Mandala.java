@@ -18,37 +18,54 @@ along with this program.  If not, see <https://www.gnu.org/licenses/>.
 
 package com.wmorellato.mandalas.components;
 
-import java.awt.*;
 import java.awt.geom.*;
-import java.awt.image.*;
-import java.io.File;
-import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 
-import javax.imageio.ImageIO;
-
 import com.wmorellato.mandalas.config.ConfigurationManager;
-import com.wmorellato.mandalas.drawing.Utils;
+import com.wmorellato.mandalas.drawing.ParallelRenderer;
+import com.wmorellato.mandalas.drawing.Polyline;
+import com.wmorellato.mandalas.drawing.SymmetryTable;
 import com.wmorellato.mandalas.exceptions.InvalidCurveRangeException;
+import com.wmorellato.mandalas.raster.MandalaRaster;
+import com.wmorellato.mandalas.raster.SpanRaster;
 
 /**
  * Main class used to create a mandala. It reads from the configuration file
  * what and how many types of elements should be drawn, combine and paint them,
  * and generate the pixels of the figure that will be used to draw it in the
  * world.
+ *
+ * Mandalas with a big radius are painted in square tiles, one after the other,
+ * and each tile is turned into spans before the next one is painted, so the
+ * memory needed no longer grows with the square of the radius.
  */
 public class Mandala {
+    // side of the tiles, in pixels
+    static final int TILE_SIZE = 512;
+
     Area mMandalaArea;
     MandalaAttributes mAttributes;
     MandalaElement[] mElements;
-    int[][] mPixels;
+    MandalaRaster mRaster;
+    SpanRaster mSpans;
 
     public Mandala(ConfigurationManager config, MandalaAttributes attr) {
+        this(config, attr, config.getNumberOfRenderThreads());
+    }
+
+    /**
+     * @param config
+     * @param attr
+     * @param threads maximum number of threads painting the mandala, instead of
+     *                the number in the configuration
+     */
+    public Mandala(ConfigurationManager config, MandalaAttributes attr, int threads) {
         mAttributes = attr;
         mMandalaArea = new Area();
 
         createElements(config);
-        compose(config);
+        compose(config, threads);
     }
 
     /**
@@ -61,12 +78,14 @@ public class Mandala {
         int numRandom = config.getNumberOfRandomElements();
         int numFixed = config.getNumberOfFixedElements();
         mElements = new MandalaElement[numRandom + numFixed];
+        mAttributes.rngVersion = config.getRngVersion();
 
         // get from config
         int i = 0;
         while (i < numRandom) {
             try {
-                mElements[i++] = getRandomElement(config);
+                MandalaAttributes attr = mAttributes.forElement(i);
+                mElements[i++] = getRandomElement(config, attr);
             } catch (InvalidCurveRangeException e) {
                 System.out.println(String.format("Invalid element configured on random pool in config.yml"));
             }
@@ -74,7 +93,8 @@ public class Mandala {
 
         for (HashMap.Entry<String, ElementType> element : config.getFixedElements().entrySet()) {
             try {
-                mElements[i++] = getFixedElement(element.getKey(), element.getValue(), config);
+                MandalaAttributes attr = mAttributes.forElement(i);
+                mElements[i++] = getFixedElement(element.getKey(), element.getValue(), config, attr);
             } catch (InvalidCurveRangeException e) {
                 System.out.println(
                         String.format("Invalid element configured for element %s config.yml", element.getKey()));
@@ -87,29 +107,32 @@ public class Mandala {
      * configuration file.
      * 
      * @param config
+     * @param attr   attributes of the element, see
+     *               {@link MandalaAttributes#forElement(int)}
      * @return
      * @throws InvalidCurveRangeException
      */
-    private MandalaElement getRandomElement(ConfigurationManager config) throws InvalidCurveRangeException {
-        int randIndex = mAttributes.nextInt(config.getPool().size());
+    private MandalaElement getRandomElement(ConfigurationManager config, MandalaAttributes attr)
+            throws InvalidCurveRangeException {
+        int randIndex = attr.nextInt(config.getPool().size());
         ElementType elementType = config.getPool().get(randIndex);
 
         switch (elementType) {
             case CURVE_CONCAVE:
-                return new InnerPath(mAttributes, config.getCurveVerticesFromPool(ElementType.CURVE_CONCAVE),
+                return new InnerPath(attr, config.getCurveVerticesFromPool(ElementType.CURVE_CONCAVE),
                         config.getRangeFromPool(ElementType.CURVE_CONCAVE), InnerPath.CONCAVE_PATH);
             case CURVE_CONVEX:
-                return new InnerPath(mAttributes, config.getCurveVerticesFromPool(ElementType.CURVE_CONVEX),
+                return new InnerPath(attr, config.getCurveVerticesFromPool(ElementType.CURVE_CONVEX),
                         config.getRangeFromPool(ElementType.CURVE_CONVEX), InnerPath.CONVEX_PATH);
             case CURVE_RANDOM:
-                return new InnerPath(mAttributes, config.getCurveVerticesFromPool(ElementType.CURVE_RANDOM),
+                return new InnerPath(attr, config.getCurveVerticesFromPool(ElementType.CURVE_RANDOM),
                         config.getRangeFromPool(ElementType.CURVE_RANDOM), InnerPath.RANDOM_PATH);
             case PETAL:
-                return new Petal(mAttributes, config.getRangeFromPool(ElementType.PETAL));
+                return new Petal(attr, config.getRangeFromPool(ElementType.PETAL));
             case STRIP:
-                return new Petal(mAttributes, config.getRangeFromPool(ElementType.PETAL));
+                return new Petal(attr, config.getRangeFromPool(ElementType.PETAL));
             default:
-                return new InnerPath(mAttributes, config.getCurveVerticesFromPool(ElementType.CURVE_RANDOM),
+                return new InnerPath(attr, config.getCurveVerticesFromPool(ElementType.CURVE_RANDOM),
                         config.getRangeFromPool(ElementType.CURVE_RANDOM), InnerPath.RANDOM_PATH);
         }
     }
@@ -120,70 +143,166 @@ public class Mandala {
      * @param id
      * @param elementType
      * @param config
+     * @param attr        attributes of the element, see
+     *                    {@link MandalaAttributes#forElement(int)}
      * @return
      * @throws InvalidCurveRangeException
      */
-    private MandalaElement getFixedElement(String id, ElementType elementType, ConfigurationManager config)
-            throws InvalidCurveRangeException {
+    private MandalaElement getFixedElement(String id, ElementType elementType, ConfigurationManager config,
+            MandalaAttributes attr) throws InvalidCurveRangeException {
         switch (elementType) {
             case CURVE_CONCAVE:
-                return new InnerPath(mAttributes, config.getCurveVerticesFromFixedElement(id),
+                return new InnerPath(attr, config.getCurveVerticesFromFixedElement(id),
                         config.getRangeFromFixedElement(id), InnerPath.CONCAVE_PATH);
             case CURVE_CONVEX:
-                return new InnerPath(mAttributes, config.getCurveVerticesFromFixedElement(id),
+                return new InnerPath(attr, config.getCurveVerticesFromFixedElement(id),
                         config.getRangeFromFixedElement(id), InnerPath.CONVEX_PATH);
             case CURVE_RANDOM:
-                return new InnerPath(mAttributes, config.getCurveVerticesFromFixedElement(id),
+                return new InnerPath(attr, config.getCurveVerticesFromFixedElement(id),
                         config.getRangeFromFixedElement(id), InnerPath.RANDOM_PATH);
             case PETAL:
-                return new Petal(mAttributes, config.getRangeFromFixedElement(id));
+                return new Petal(attr, config.getRangeFromFixedElement(id));
             case STRIP:
-                return new Petal(mAttributes, config.getRangeFromFixedElement(id));
+                return new Petal(attr, config.getRangeFromFixedElement(id));
             default:
-                return new InnerPath(mAttributes, config.getCurveVerticesFromPool(ElementType.CURVE_RANDOM),
+                return new InnerPath(attr, config.getCurveVerticesFromPool(ElementType.CURVE_RANDOM),
                         config.getRangeFromPool(ElementType.CURVE_RANDOM), InnerPath.RANDOM_PATH);
         }
     }
 
     /**
-     * Combine all elements into a Graphics2D object, painting each one separately
-     * and returning the resulting pixels.
+     * Combine all elements into a raster, painting each one separately and
+     * returning the resulting pixels. Each element is painted with the color
+     * of its label, so the pixels hold the index of the element on top. Groups of
+     * elements are painted in parallel and merged in order, giving the same
+     * pixels as painting them one by one.
      * 
      * @param config
+     * @param threads maximum number of threads painting the mandala
      */
-    private void compose(ConfigurationManager config) {
-        BufferedImage image = new BufferedImage(mAttributes.radius * 2 + 1, mAttributes.radius * 2 + 1,
-                BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2 = image.createGraphics();
+    private void compose(ConfigurationManager config, int threads) {
         mMandalaArea = new Area();
 
+        // too big to be kept as pixels
+        if (mAttributes.radius > config.getTiledRenderingRadius()) {
+            composeTiled(threads);
+            return;
+        }
+
+        mRaster = MandalaRaster.create(mAttributes.radius * 2 + 1, mAttributes.radius * 2 + 1);
+
+        if (config.shouldRenderByWedge() && SymmetryTable.supports(mAttributes.numberOfSections)) {
+            composeWedge(threads);
+        } else {
+            ParallelRenderer.render(mRaster, 0, 0, mElements.length, threads, (r, i) -> {
+                r.setLabel(MandalaRaster.labelOf(i));
+
+                mElements[i].distribute(r);
+            });
+        }
+    }
+
+    /**
+     * Render only the wedge between 0 and 180/sections degrees and fill the image
+     * by rotating and mirroring it. The cost of drawing no longer grows with the
+     * number of sections.
+     * 
+     * @param threads maximum number of threads painting the wedge
+     */
+    private void composeWedge(int threads) {
+        SymmetryTable table = SymmetryTable.get(mAttributes.radius, mAttributes.numberOfSections);
+        MandalaRaster wedge = MandalaRaster.create(table.getWedgeWidth(), table.getWedgeHeight());
+        Rectangle2D region = table.getWedgeBounds();
+
+        ParallelRenderer.render(wedge, table.getWedgeX(), table.getWedgeY(), mElements.length, threads, (r, i) -> {
+            r.setLabel(MandalaRaster.labelOf(i));
+
+            mElements[i].distributeInRegion(r, mAttributes.numberOfSections, region);
+        });
+
+        table.replicate(wedge.getLabels(), mRaster.getLabels());
+    }
+
+    /**
+     * Paint the mandala one tile at a time, drawing in each tile only the copies
+     * of the elements that touch it. The pixels are the same as when the whole
+     * mandala is painted at once.
+     * 
+     * @param threads maximum number of threads painting each tile
+     */
+    private void composeTiled(int threads) {
+        int size = mAttributes.radius * 2 + 1;
+        AffineTransform[][] copies = new AffineTransform[mElements.length][];
+        Rectangle2D[][] bounds = new Rectangle2D[mElements.length][];
+
         for (int i = 0; i < mElements.length; i++) {
-            Color c = new Color(mAttributes.nextInt(255), mAttributes.nextInt(255), mAttributes.nextInt(255));
-            g2.setPaint(c);
+            Polyline polyline = mElements[i].getPolyline();
+            copies[i] = mElements[i].getCopyTransforms();
+            bounds[i] = new Rectangle2D[copies[i].length];
 
-            mElements[i].distribute(g2);
+            for (int k = 0; k < copies[i].length; k++) {
+                Rectangle2D b = polyline.getBounds(copies[i][k]);
+
+                // the stroke is one pixel wide
+                b.setRect(b.getX() - 1, b.getY() - 1, b.getWidth() + 2, b.getHeight() + 2);
+                bounds[i][k] = b;
+            }
         }
 
-        mPixels = Utils.convertTo2DUsingGetRGB(image);
+        SpanRaster.Builder builder = new SpanRaster.Builder(size, size);
+        byte[] pixels = new byte[TILE_SIZE * TILE_SIZE];
 
-        // should we save to file?
-        if (config.shouldSaveToFile()) {
-            try {
-                File outputfile = new File(mAttributes.seed + ".bmp");
-                ImageIO.write(image, "bmp", outputfile);
-            } catch (IOException e) {
+        for (int y = 0; y < size; y += TILE_SIZE) {
+            for (int x = 0; x < size; x += TILE_SIZE) {
+                int width = Math.min(TILE_SIZE, size - x);
+                int height = Math.min(TILE_SIZE, size - y);
+                MandalaRaster tile = new MandalaRaster(pixels, width, height, 0, width);
+                Rectangle2D region = new Rectangle2D.Double(x, y, width, height);
+
+                Arrays.fill(pixels, 0, width * height, (byte) MandalaRaster.BACKGROUND);
+                ParallelRenderer.render(tile, x, y, mElements.length, threads, (r, i) -> {
+                    Polyline polyline = mElements[i].getPolyline();
+                    r.setLabel(MandalaRaster.labelOf(i));
+
+                    for (int k = 0; k < copies[i].length; k++) {
+                        if (bounds[i][k].intersects(region)) {
+                            r.stroke(polyline, copies[i][k]);
+                        }
+                    }
+                });
+
+                builder.addTile(tile, y, x);
             }
         }
 
-        g2.dispose();
+        mSpans = builder.build();
     }
 
     public Area getArea() {
         return this.mMandalaArea;
     }
 
-    public int[][] getRGBPixels() {
-        return mPixels;
+    /**
+     * Get the pixels of the mandala.
+     * 
+     * @return a {@link MandalaRaster} with the labels of the mandala, or null if
+     *         it was painted in tiles.
+     */
+    public MandalaRaster getRaster() {
+        return mRaster;
+    }
+
+    /**
+     * Get the spans of the mandala, however it was painted.
+     * 
+     * @return a {@link SpanRaster} with the labels of the mandala.
+     */
+    public SpanRaster getSpans() {
+        if (mSpans == null) {
+            mSpans = SpanRaster.of(mRaster);
+        }
+
+        return mSpans;
     }
 
     public MandalaElement[] getElements() {
@@ -19,15 +19,32 @@ along with this program.  If not, see <https://www.gnu.org/licenses/>.
 package com.wmorellato.mandalas.components;
 
 import java.util.Random;
+import java.util.SplittableRandom;
 
 /**
  * Hold the necessary attributes of a mandala.
+ *
+ * The random numbers come from one of two generators, chosen by
+ * {@link #rngVersion}. Version 1 is a single {@link Random} shared by every
+ * element, so the elements must be created one after the other, in order.
+ * Version 2 gives each element its own {@link SplittableRandom}, derived from
+ * the seed and the index of the element, so an element can be created alone or
+ * alongside the others and still come out the same. The seed of each generator
+ * goes through a mixing function, so the sequences of neighbouring elements
+ * are unrelated instead of being the same sequence shifted by one value.
  */
 public class MandalaAttributes {
+    public static final int RNG_SHARED = 1;
+    public static final int RNG_PER_ELEMENT = 2;
+    // odd constant spreading the indexes of the elements over the 64 bits
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
     public int CX;
     public int CY;
 
     private Random mRandom;
+    private SplittableRandom mElementRandom;
+    public int rngVersion = RNG_SHARED;
     public long seed;
     public int radius;
     public int numberOfSections;
@@ -46,11 +63,51 @@ public class MandalaAttributes {
         mRandom = new Random(seed);
     }
 
+    private MandalaAttributes(MandalaAttributes attr, SplittableRandom random) {
+        seed = attr.seed;
+        radius = attr.radius;
+        numberOfSections = attr.numberOfSections;
+        numberOfElements = attr.numberOfElements;
+        rngVersion = attr.rngVersion;
+        CX = attr.CX;
+        CY = attr.CY;
+
+        mElementRandom = random;
+    }
+
+    /**
+     * Attributes used to create one element. With {@link #RNG_PER_ELEMENT}, they
+     * hold a generator of their own that only depends on the seed and the index;
+     * otherwise these same attributes are returned.
+     * 
+     * @param index index of the element in the mandala
+     * @return the attributes of the element.
+     */
+    public MandalaAttributes forElement(int index) {
+        if (rngVersion < RNG_PER_ELEMENT) {
+            return this;
+        }
+
+        return new MandalaAttributes(this, new SplittableRandom(mix64(seed ^ (index + 1) * GOLDEN_GAMMA)));
+    }
+
+    /**
+     * Finalizer of MurmurHash3 (variant 13 of Stafford), the function
+     * SplittableRandom uses on its own values: every bit of the result depends on
+     * every bit of the input.
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+
+        return z ^ (z >>> 31);
+    }
+
     /**
      * Wrapper for Random.nextInt(int)
      */
     public int nextInt(int bound) {
-        return mRandom.nextInt(bound);
+        return mElementRandom != null ? mElementRandom.nextInt(bound) : mRandom.nextInt(bound);
     }
 
     public int getSectionAngle() {
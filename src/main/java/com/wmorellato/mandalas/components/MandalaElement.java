@@ -21,6 +21,9 @@ package com.wmorellato.mandalas.components;
 import java.awt.*;
 import java.awt.geom.*;
 
+import com.wmorellato.mandalas.drawing.Polyline;
+import com.wmorellato.mandalas.drawing.ScanlineRasterizer;
+
 /**
  * Abstract class describing a generic element on the Mandala. This class will be
  * extended by others.
@@ -28,18 +31,37 @@ import java.awt.geom.*;
 abstract public class MandalaElement {
     MandalaAttributes mAttributes;
     Shape mShape;
+    Polyline mPolyline;
 
     public MandalaElement(MandalaAttributes attr) {
         this.mAttributes = attr;
     }
 
     public Shape mirror() {
+        return getMirrorTransform().createTransformedShape(mShape);
+    }
+
+    AffineTransform getMirrorTransform() {
         AffineTransform at = new AffineTransform();
         at.translate(mAttributes.CX, mAttributes.CY);
         at.scale(1, -1);
         at.translate(-mAttributes.CX, -mAttributes.CY);
 
-        return at.createTransformedShape(mShape);
+        return at;
+    }
+
+    /**
+     * The shape of this element flattened into segments. It is computed on the
+     * first call and shared by every rotated and mirrored copy.
+     * 
+     * @return the {@link Polyline} of the shape.
+     */
+    public Polyline getPolyline() {
+        if (mPolyline == null) {
+            mPolyline = Polyline.of(mShape, Polyline.toleranceFor(mAttributes.radius));
+        }
+
+        return mPolyline;
     }
 
     /**
@@ -48,21 +70,79 @@ abstract public class MandalaElement {
      * 
      * @return
      */
-    public MandalaElement distribute(Graphics2D g2) {
+    public MandalaElement distribute(ScanlineRasterizer rasterizer) {
+        Polyline polyline = getPolyline();
+
+        for (AffineTransform at : getCopyTransforms()) {
+            rasterizer.stroke(polyline, at);
+        }
+
+        return this;
+    }
+
+    /**
+     * Transforms of the copies drawn by {@link #distribute(ScanlineRasterizer)},
+     * in the order they are drawn: each rotation is followed by its mirror.
+     * 
+     * @return a new array of transforms.
+     */
+    public AffineTransform[] getCopyTransforms() {
         int rotations = (int) (360 / mAttributes.getSectionAngle());
+        AffineTransform[] copies = new AffineTransform[rotations * 2];
 
         AffineTransform at = new AffineTransform();
-        Shape mirrorShape = mirror();
+        AffineTransform mirror = getMirrorTransform();
 
         for (int j = 0; j < rotations; j++) {
             at.rotate(Math.toRadians(mAttributes.getSectionAngle() * j), mAttributes.CX, mAttributes.CY);
-            g2.draw(at.createTransformedShape(mShape));
-            g2.draw(at.createTransformedShape(mirrorShape));
+            copies[2 * j] = new AffineTransform(at);
+            copies[2 * j + 1] = new AffineTransform(at);
+            copies[2 * j + 1].concatenate(mirror);
+        }
+
+        return copies;
+    }
+
+    /**
+     * Draw only the copies of this element that touch a region of the mandala.
+     * Used to render a single wedge of a mandala with the given number of
+     * sections; unlike {@link #distribute(ScanlineRasterizer)}, each copy is
+     * rotated by an exact multiple of 360/sections degrees.
+     * 
+     * @param rasterizer where the copies are drawn
+     * @param sections   number of sections of the mandala
+     * @param region     region of the mandala being rendered
+     * @return
+     */
+    public MandalaElement distributeInRegion(ScanlineRasterizer rasterizer, int sections, Rectangle2D region) {
+        AffineTransform mirror = getMirrorTransform();
+        Polyline polyline = getPolyline();
+        double sectionAngle = 360.0 / sections;
+
+        for (int j = 0; j < sections; j++) {
+            AffineTransform at = AffineTransform.getRotateInstance(Math.toRadians(sectionAngle * j), mAttributes.CX,
+                    mAttributes.CY);
+
+            drawIfVisible(rasterizer, polyline, at, region);
+            at.concatenate(mirror);
+            drawIfVisible(rasterizer, polyline, at, region);
         }
 
         return this;
     }
 
+    private void drawIfVisible(ScanlineRasterizer rasterizer, Polyline polyline, AffineTransform at,
+            Rectangle2D region) {
+        Rectangle2D bounds = polyline.getBounds(at);
+
+        // the stroke is one pixel wide
+        bounds.setRect(bounds.getX() - 1, bounds.getY() - 1, bounds.getWidth() + 2, bounds.getHeight() + 2);
+
+        if (bounds.intersects(region)) {
+            rasterizer.stroke(polyline, at);
+        }
+    }
+
     /**
      * Rotate this element by n degrees.
      * 
@@ -18,9 +18,8 @@ along with this program.  If not, see <https://www.gnu.org/licenses/>.
 
 package com.wmorellato.mandalas.components;
 
-import java.awt.*;
-
 import com.wmorellato.mandalas.drawing.CurveUtils;
+import com.wmorellato.mandalas.drawing.PointList;
 
 /**
  * Create a petal shape.
@@ -44,7 +43,7 @@ public class Petal extends MandalaElement {
 
     private void createOpenPetal() {
         RandomPointGenerator rpg = new RandomPointGenerator(mAttributes.nextInt(Integer.MAX_VALUE));
-        Point[] points = rpg.generatePointsForReflection(2, 2, mAttributes.CX, mAttributes.CY, mminRadius,
+        PointList points = rpg.generatePointsForReflection(2, 2, mAttributes.CX, mAttributes.CY, mminRadius,
                 mAttributes.radius, mAttributes.getSectionAngle());
 
         mShape = CurveUtils.generateInOrderQuadCurve(points, false);
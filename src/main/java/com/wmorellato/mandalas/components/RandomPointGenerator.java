@@ -18,14 +18,14 @@ along with this program.  If not, see <https://www.gnu.org/licenses/>.
 
 package com.wmorellato.mandalas.components;
 
-import java.util.ArrayList;
 import java.util.Random;
-import java.awt.*;
 
+import com.wmorellato.mandalas.drawing.PointList;
 import com.wmorellato.mandalas.drawing.PointUtils;
 
 /**
- * Point generator.
+ * Point generator. The points are written to a {@link PointList}, so no object
+ * is created per point.
  */
 public class RandomPointGenerator {
     int mSeed;
@@ -36,12 +36,11 @@ public class RandomPointGenerator {
         this.mRandom = new Random(seed);
     }
 
-    public Point[] generateRandomPoints(int numberOfPoints, int centerX, int centerY, int radius, int arcAngle) {
-
-        Point[] points = new Point[numberOfPoints];
+    public PointList generateRandomPoints(int numberOfPoints, int centerX, int centerY, int radius, int arcAngle) {
+        PointList points = new PointList(numberOfPoints);
 
         for (int i = 0; i < numberOfPoints; i++) {
-            points[i] = generateSinglePoint(centerX, centerY, 0, radius, 0, arcAngle);
+            addSinglePoint(points, centerX, centerY, 0, radius, 0, arcAngle);
         }
 
         return points;
@@ -60,66 +59,67 @@ public class RandomPointGenerator {
      * @param arcAngle
      * @return
      */
-    public Point[] generatePointsForReflection(int numberOfPoints, int connectingPoints, int centerX, int centerY,
+    public PointList generatePointsForReflection(int numberOfPoints, int connectingPoints, int centerX, int centerY,
             int minArcRadius, int maxArcRadius, int arcAngle) {
 
-        Point[] points = new Point[numberOfPoints];
+        PointList points = new PointList(numberOfPoints);
 
         // first point sticked to axis
         // TODO: review this
-        points[0] = PointUtils.polarToXY(centerX, centerY, minArcRadius, 0);
+        points.addPolar(centerX, centerY, minArcRadius, 0);
 
         for (int i = 1; i < numberOfPoints; i++) {
             // considerar uma função polinomial
             int randomRadius = mRandom.nextInt(maxArcRadius);
             int randomAngle = mRandom.nextInt(arcAngle);
-            points[i] = PointUtils.polarToXY(centerX, centerY, randomRadius, randomAngle);
+            points.addPolar(centerX, centerY, randomRadius, randomAngle);
         }
 
         while (connectingPoints > 0) {
             int index = mRandom.nextInt(numberOfPoints);
-            points[index].y = centerY;
+            points.setY(index, centerY);
             connectingPoints--;
         }
 
         return points;
     }
 
-    public Point[] generatePointsForClosedCurve(int numberOfPoints, int centerX, int centerY, int minArcRadius,
+    public PointList generatePointsForClosedCurve(int numberOfPoints, int centerX, int centerY, int minArcRadius,
             int maxArcRadius, int arcAngle, boolean stickFirst, boolean stickLast) {
-        ArrayList<Point> points = new ArrayList<>();
-        Point last = null;
+        PointList points = new PointList(numberOfPoints * 2 + 1);
+        int lastRadius = 0, lastAngle = 0;
 
         int centralAngle = (int) (arcAngle / 2);
         int startIndex = 0;
         int endIndex = numberOfPoints;
 
         if (stickFirst) {
-            points.add(generateSinglePoint(centerX, centerY, minArcRadius, maxArcRadius, centralAngle, centralAngle));
+            addSinglePoint(points, centerX, centerY, minArcRadius, maxArcRadius, centralAngle, centralAngle);
             startIndex++;
         }
 
         if (stickLast) {
-            last = generateSinglePoint(centerX, centerY, minArcRadius, maxArcRadius, centralAngle, centralAngle);
+            // drawn now, added after the others
+            lastRadius = randomRadius(minArcRadius, maxArcRadius);
+            lastAngle = randomAngle(centralAngle, centralAngle);
             endIndex--;
         }
 
         for (int i = startIndex; i < endIndex; i++) {
-            points.add(generateSinglePoint(centerX, centerY, minArcRadius, maxArcRadius, 0, arcAngle));
+            addSinglePoint(points, centerX, centerY, minArcRadius, maxArcRadius, 0, arcAngle);
         }
 
         if (stickLast) {
-            points.add(last);
+            points.addPolar(centerX, centerY, lastRadius, lastAngle);
         }
 
         for (int i = endIndex - 1; i > startIndex - 1; i--) {
-            points.add(PointUtils.getSymmetricPoint(points.get(i), centerX, centerY, centralAngle));
+            PointUtils.addSymmetricPoint(points, points.getX(i), points.getY(i), centerX, centerY, centralAngle);
         }
 
-        points.add(points.get(0));
+        points.add(points.getX(0), points.getY(0));
 
-        Point[] pointsArray = new Point[points.size()];
-        return points.toArray(pointsArray);
+        return points;
     }
 
     /**
@@ -136,73 +136,79 @@ public class RandomPointGenerator {
      * @param stickLast
      * @return
      */
-    public Point[] generateOrderedPath(int numberOfPoints, int centerX, int centerY, int minArcRadius, int maxArcRadius,
-            int arcAngle, boolean stickFirst, boolean stickLast) {
-        ArrayList<Point> points = new ArrayList<>();
-        Point last = null;
+    public PointList generateOrderedPath(int numberOfPoints, int centerX, int centerY, int minArcRadius,
+            int maxArcRadius, int arcAngle, boolean stickFirst, boolean stickLast) {
+        PointList points = new PointList(numberOfPoints * 2 + 1);
+        int lastRadius = 0, lastAngle = 0;
 
-        int lastRadius = minArcRadius;
+        int currentRadius = minArcRadius;
         int centralAngle = (int) (arcAngle / 2);
         int startIndex = 0;
         int endIndex = numberOfPoints;
 
         if (stickFirst) {
-            points.add(generateSinglePoint(centerX, centerY, minArcRadius, minArcRadius, centralAngle, centralAngle));
-            lastRadius = (int) PointUtils.XYToPolar(centerX, centerY, points.get(0)).r;
+            addSinglePoint(points, centerX, centerY, minArcRadius, minArcRadius, centralAngle, centralAngle);
+            currentRadius = PointUtils.getRadius(centerX, centerY, points.getX(0), points.getY(0));
             startIndex++;
         }
 
         if (stickLast) {
-            last = generateSinglePoint(centerX, centerY, maxArcRadius, maxArcRadius, centralAngle, centralAngle);
+            // drawn now, added after the others
+            lastRadius = randomRadius(maxArcRadius, maxArcRadius);
+            lastAngle = randomAngle(centralAngle, centralAngle);
             endIndex--;
         }
 
         for (int i = startIndex; i < endIndex; i++) {
-            points.add(generateSinglePoint(centerX, centerY, lastRadius, maxArcRadius, 0, arcAngle));
-            lastRadius = (int) PointUtils.XYToPolar(centerX, centerY, points.get(i)).r;
+            addSinglePoint(points, centerX, centerY, currentRadius, maxArcRadius, 0, arcAngle);
+            currentRadius = PointUtils.getRadius(centerX, centerY, points.getX(i), points.getY(i));
         }
 
         if (stickLast) {
-            points.add(last);
+            points.addPolar(centerX, centerY, lastRadius, lastAngle);
         }
 
         for (int i = endIndex - 1; i > startIndex - 1; i--) {
-            points.add(PointUtils.getSymmetricPoint(points.get(i), centerX, centerY, centralAngle));
+            PointUtils.addSymmetricPoint(points, points.getX(i), points.getY(i), centerX, centerY, centralAngle);
         }
 
-        points.add(points.get(0));
+        points.add(points.getX(0), points.getY(0));
 
-        Point[] pointsArray = new Point[points.size()];
-        return points.toArray(pointsArray);
+        return points;
     }
 
     /**
+     * Add a random point between two radii and two angles.
      * 
+     * @param points
      * @param centerX
      * @param centerY
      * @param minArcRadius
      * @param maxArcRadius
      * @param minAngle
      * @param maxAngle
-     * @return
      */
-    private Point generateSinglePoint(int centerX, int centerY, int minArcRadius, int maxArcRadius, int minAngle,
-            int maxAngle) {
-        int randomRadius;
-        int randomAngle;
+    private void addSinglePoint(PointList points, int centerX, int centerY, int minArcRadius, int maxArcRadius,
+            int minAngle, int maxAngle) {
+        int randomRadius = randomRadius(minArcRadius, maxArcRadius);
+        int randomAngle = randomAngle(minAngle, maxAngle);
 
+        points.addPolar(centerX, centerY, randomRadius, randomAngle);
+    }
+
+    private int randomRadius(int minArcRadius, int maxArcRadius) {
         if (minArcRadius == maxArcRadius) {
-            randomRadius = minArcRadius;
-        } else {
-            randomRadius = mRandom.nextInt(maxArcRadius - minArcRadius) + minArcRadius + 1;
+            return minArcRadius;
         }
 
+        return mRandom.nextInt(maxArcRadius - minArcRadius) + minArcRadius + 1;
+    }
+
+    private int randomAngle(int minAngle, int maxAngle) {
         if (minAngle == maxAngle) {
-            randomAngle = minAngle;
-        } else {
-            randomAngle = mRandom.nextInt(maxAngle - minAngle) + minAngle + 1;
+            return minAngle;
         }
 
-        return PointUtils.polarToXY(centerX, centerY, randomRadius, randomAngle);
+        return mRandom.nextInt(maxAngle - minAngle) + minAngle + 1;
     }
-}
\ No newline at end of file
+}
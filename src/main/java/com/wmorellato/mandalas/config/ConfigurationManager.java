@@ -20,16 +20,20 @@ package com.wmorellato.mandalas.config;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 
 import com.wmorellato.mandalas.MandalasPlugin;
 import com.wmorellato.mandalas.components.ElementType;
 import com.wmorellato.mandalas.components.InnerPath;
+import com.wmorellato.mandalas.components.MandalaAttributes;
 import com.wmorellato.mandalas.components.Petal;
 import com.wmorellato.mandalas.exceptions.InvalidCurveRangeException;
 import com.wmorellato.mandalas.exceptions.InvalidElementAttributeException;
 
 import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 
 /**
@@ -38,12 +42,51 @@ import org.bukkit.configuration.file.FileConfiguration;
 public class ConfigurationManager {
     private static final String PATH_SELECTION_TOOL = "selection_tool";
     private static final String PATH_SAVE_ALL = "save_all_to_bitmap";
+    private static final String PATH_EXPORT_FOLDER = "export.folder";
+    private static final String PATH_EXPORT_FORMAT = "export.format";
+    private static final String PATH_EXPORT_COMPRESSION = "export.compression";
+    private static final String PATH_EXPORT_QUEUE_SIZE = "export.queue_size";
     private static final String PATH_NUMBER_SECTIONS = "mandala.sections";
+    private static final String PATH_WEDGE_RENDERING = "mandala.wedge_rendering";
+    private static final String PATH_TILED_RADIUS = "mandala.tiled_above_radius";
+    private static final String PATH_RNG_VERSION = "mandala.rng_version";
     private static final String PATH_RANDOM_POOL = "mandala.elements.random.pool";
     private static final String PATH_RANDOM_COUNT = "mandala.elements.random.count";
     private static final String PATH_FIXED_ELEMENTS = "mandala.elements.fixed";
+    private static final String PATH_MAX_TICK_BUDGET = "placement.max_tick_budget";
+    private static final String PATH_MIN_TICK_BUDGET = "placement.min_tick_budget";
+    private static final String PATH_SKIP_UNCHANGED = "placement.skip_unchanged";
+    private static final String PATH_CHUNKS_PER_TICK = "placement.chunks_per_tick";
+    private static final String PATH_PHYSICS = "placement.physics";
+    private static final String PATH_WORKERS = "generation.workers";
+    private static final String PATH_RENDER_THREADS = "generation.render_threads";
+    private static final String PATH_CACHE_SIZE = "generation.cache_size_mb";
+    private static final String PATH_DISK_CACHE_SIZE = "generation.disk_cache_size_mb";
+    private static final String PATH_PREGENERATED_PER_SIZE = "generation.pregeneration.per_size";
+    private static final String PATH_PREGENERATED_RADII = "generation.pregeneration.radii";
+    private static final String PATH_PREGENERATION_WORKERS = "generation.pregeneration.workers";
+    private static final String PATH_PREGENERATION_MEMORY = "generation.pregeneration.memory_mb";
+    private static final String PATH_MANDALA = "mandala";
+    private static final String PATH_UNDO_DEPTH = "undo.depth";
+    private static final String PATH_UNDO_SPILL = "undo.spill_kb";
+    private static final String PATH_PREVIEW_BLOCKS_PER_TICK = "preview.blocks_per_tick";
 
     private static final int DEFAULT_NUMBER_SECTIONS = 8;
+    private static final int DEFAULT_TILED_RADIUS = 1024;
+    private static final int DEFAULT_EXPORT_COMPRESSION = 6;
+    private static final int DEFAULT_EXPORT_QUEUE_SIZE = 8;
+    private static final double DEFAULT_MAX_TICK_BUDGET = 20.0;
+    private static final double DEFAULT_MIN_TICK_BUDGET = 2.0;
+    private static final int DEFAULT_WORKERS = 2;
+    private static final int DEFAULT_CHUNKS_PER_TICK = 4;
+    private static final int DEFAULT_CACHE_SIZE = 64;
+    private static final int DEFAULT_DISK_CACHE_SIZE = 256;
+    private static final int DEFAULT_PREGENERATED_PER_SIZE = 2;
+    private static final int DEFAULT_PREGENERATION_WORKERS = 1;
+    private static final int DEFAULT_PREGENERATION_MEMORY = 32;
+    private static final int DEFAULT_UNDO_DEPTH = 5;
+    private static final int DEFAULT_UNDO_SPILL = 256;
+    private static final int DEFAULT_PREVIEW_BLOCKS_PER_TICK = 2048;
     private static final Material DEFAULT_SELECTION_TOOL = Material.RED_TULIP;
 
     MandalasPlugin mPlugin;
@@ -141,6 +184,39 @@ public class ConfigurationManager {
         return mConfig.getInt(PATH_NUMBER_SECTIONS, DEFAULT_NUMBER_SECTIONS);
     }
 
+    /**
+     * Get the configuration option if mandalas should be rendered one wedge at a
+     * time. Defaults to false.
+     * 
+     * @return flag if only a wedge should be drawn and then replicated.
+     */
+    public boolean shouldRenderByWedge() {
+        return mConfig.getBoolean(PATH_WEDGE_RENDERING, false);
+    }
+
+    /**
+     * Get the version of the random number generator used to create the
+     * elements, see {@link MandalaAttributes}. Defaults to 1, which keeps the
+     * mandalas of every seed as they were.
+     * 
+     * @return {@link MandalaAttributes#RNG_SHARED} or
+     *         {@link MandalaAttributes#RNG_PER_ELEMENT}.
+     */
+    public int getRngVersion() {
+        int version = mConfig.getInt(PATH_RNG_VERSION, MandalaAttributes.RNG_SHARED);
+
+        return version == MandalaAttributes.RNG_PER_ELEMENT ? version : MandalaAttributes.RNG_SHARED;
+    }
+
+    /**
+     * Get the radius above which mandalas are painted in tiles.
+     * 
+     * @return the radius, in blocks.
+     */
+    public int getTiledRenderingRadius() {
+        return Math.max(0, mConfig.getInt(PATH_TILED_RADIUS, DEFAULT_TILED_RADIUS));
+    }
+
     /**
      * Get the configuration option if the plugin should save to a bmp file every
      * mandala created. If options is not present in the file it defaults to false.
@@ -151,6 +227,222 @@ public class ConfigurationManager {
         return mConfig.getBoolean(PATH_SAVE_ALL, false);
     }
 
+    /**
+     * Get the folder, inside the plugin folder, where images are exported.
+     * 
+     * @return the name of the folder.
+     */
+    public String getExportFolder() {
+        return mConfig.getString(PATH_EXPORT_FOLDER, "exports");
+    }
+
+    /**
+     * Get the format of the exported images.
+     * 
+     * @return "png" (the default) or "bmp".
+     */
+    public String getExportFormat() {
+        return mConfig.getString(PATH_EXPORT_FORMAT, "png").equalsIgnoreCase("bmp") ? "bmp" : "png";
+    }
+
+    /**
+     * Get the compression level of exported PNG images.
+     * 
+     * @return a level from 0 (fastest) to 9 (smallest).
+     */
+    public int getExportCompression() {
+        return Math.max(0, Math.min(9, mConfig.getInt(PATH_EXPORT_COMPRESSION, DEFAULT_EXPORT_COMPRESSION)));
+    }
+
+    /**
+     * Get how many images may wait to be exported. Images generated while the
+     * queue is full are not exported.
+     * 
+     * @return size of the queue, at least one.
+     */
+    public int getExportQueueSize() {
+        return Math.max(1, mConfig.getInt(PATH_EXPORT_QUEUE_SIZE, DEFAULT_EXPORT_QUEUE_SIZE));
+    }
+
+    /**
+     * Get the maximum time, in milliseconds, the plugin may spend placing blocks
+     * in a single server tick.
+     * 
+     * @return the upper limit of the placement budget per tick.
+     */
+    public double getMaxTickBudget() {
+        return mConfig.getDouble(PATH_MAX_TICK_BUDGET, DEFAULT_MAX_TICK_BUDGET);
+    }
+
+    /**
+     * Get the minimum time, in milliseconds, spent placing blocks in a single
+     * server tick. The budget never goes below this, even if the server is
+     * lagging, so a mandala always makes progress.
+     * 
+     * @return the lower limit of the placement budget per tick.
+     */
+    public double getMinTickBudget() {
+        return mConfig.getDouble(PATH_MIN_TICK_BUDGET, DEFAULT_MIN_TICK_BUDGET);
+    }
+
+    /**
+     * Get the configuration option if blocks that already hold the material of
+     * the mandala should be left alone. Defaults to true.
+     * 
+     * @return flag if the world should be compared with the mandala first.
+     */
+    public boolean shouldSkipUnchangedBlocks() {
+        return mConfig.getBoolean(PATH_SKIP_UNCHANGED, true);
+    }
+
+    /**
+     * Check if blocks are placed with physics. Without it, only the border of the
+     * mandala updates the blocks around it.
+     * 
+     * @return true by default.
+     */
+    public boolean shouldApplyPhysics() {
+        return mConfig.getBoolean(PATH_PHYSICS, true);
+    }
+
+    /**
+     * Get how many chunks may be loaded per tick before a mandala is placed.
+     * 
+     * @return number of chunks, at least one.
+     */
+    public int getChunksPerTick() {
+        return Math.max(1, mConfig.getInt(PATH_CHUNKS_PER_TICK, DEFAULT_CHUNKS_PER_TICK));
+    }
+
+    /**
+     * Get the number of threads used to generate mandalas in the background.
+     * 
+     * @return number of worker threads, at least one.
+     */
+    public int getNumberOfWorkers() {
+        return Math.max(1, mConfig.getInt(PATH_WORKERS, DEFAULT_WORKERS));
+    }
+
+    /**
+     * Get the number of threads that paint the elements of a single mandala. When
+     * not set, or set to 0, one thread per processor is used.
+     * 
+     * @return number of threads, at least one.
+     */
+    public int getNumberOfRenderThreads() {
+        int threads = mConfig.getInt(PATH_RENDER_THREADS, 0);
+
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Get how much memory the rasters of recent mandalas may take. 0 disables the
+     * cache.
+     * 
+     * @return the size of the cache, in bytes.
+     */
+    public long getRasterCacheSize() {
+        return Math.max(0, mConfig.getLong(PATH_CACHE_SIZE, DEFAULT_CACHE_SIZE)) * 1024 * 1024;
+    }
+
+    /**
+     * Get how much disk space the files of cached mandalas may take. 0 disables
+     * the disk cache.
+     * 
+     * @return the size of the disk cache, in bytes.
+     */
+    public long getDiskCacheSize() {
+        return Math.max(0, mConfig.getLong(PATH_DISK_CACHE_SIZE, DEFAULT_DISK_CACHE_SIZE)) * 1024 * 1024;
+    }
+
+    /**
+     * Get how many mandalas with random seeds are kept ready for each size. 0
+     * disables the pregeneration.
+     * 
+     * @return number of mandalas per radius and number of sections.
+     */
+    public int getPregeneratedPerSize() {
+        return Math.max(0, mConfig.getInt(PATH_PREGENERATED_PER_SIZE, DEFAULT_PREGENERATED_PER_SIZE));
+    }
+
+    /**
+     * Get the radii pregenerated from the start, before any player asks for them.
+     * 
+     * @return a list of radii, possibly empty.
+     */
+    public List<Integer> getPregeneratedRadii() {
+        return mConfig.getIntegerList(PATH_PREGENERATED_RADII);
+    }
+
+    /**
+     * Get the number of threads that pregenerate mandalas.
+     * 
+     * @return number of threads, at least one.
+     */
+    public int getNumberOfPregenerationWorkers() {
+        return Math.max(1, mConfig.getInt(PATH_PREGENERATION_WORKERS, DEFAULT_PREGENERATION_WORKERS));
+    }
+
+    /**
+     * Get how much memory the pregenerated mandalas may take.
+     * 
+     * @return the limit, in bytes.
+     */
+    public long getPregenerationMemory() {
+        return Math.max(0, mConfig.getLong(PATH_PREGENERATION_MEMORY, DEFAULT_PREGENERATION_MEMORY)) * 1024 * 1024;
+    }
+
+    /**
+     * Get how many placements each player can undo. 0 disables the undo.
+     * 
+     * @return depth of the undo history of each player.
+     */
+    public int getUndoDepth() {
+        return Math.max(0, mConfig.getInt(PATH_UNDO_DEPTH, DEFAULT_UNDO_DEPTH));
+    }
+
+    /**
+     * Get the size above which undo entries are kept on disk instead of memory.
+     * 
+     * @return the size, in bytes.
+     */
+    public long getUndoSpillSize() {
+        return Math.max(0, mConfig.getLong(PATH_UNDO_SPILL, DEFAULT_UNDO_SPILL)) * 1024;
+    }
+
+    /**
+     * Get how many fake blocks are sent per tick to a player previewing a
+     * mandala.
+     * 
+     * @return number of blocks, at least one.
+     */
+    public int getPreviewBlocksPerTick() {
+        return Math.max(1, mConfig.getInt(PATH_PREVIEW_BLOCKS_PER_TICK, DEFAULT_PREVIEW_BLOCKS_PER_TICK));
+    }
+
+    /**
+     * Summarize every option that changes how a mandala is drawn, so rasters
+     * generated with another configuration can be told apart.
+     * 
+     * @return the options of the mandala section, sorted by path.
+     */
+    public String getGenerationFingerprint() {
+        ConfigurationSection section = mConfig.getConfigurationSection(PATH_MANDALA);
+        StringBuilder sb = new StringBuilder();
+
+        if (section == null) {
+            return "";
+        }
+
+        for (String key : new TreeSet<>(section.getKeys(true))) {
+            if (!section.isConfigurationSection(key)) {
+                sb.append(key).append('=').append(section.get(key)).append(';');
+            }
+        }
+
+        return sb.toString();
+    }
+
     /**
      * Get the configured selection tool used for defining regions in the world.
      * 
@@ -57,4 +57,44 @@ public class CurveUtils {
 
         return path;
     }
+
+    /**
+     * Same as {@link #generateInOrderQuadCurve(Point[], boolean)}, reading the
+     * points from a {@link PointList}. The control points are computed on the
+     * fly.
+     * 
+     * @param points
+     * @param reversed
+     * @return a {@link Path2D.Float} connecting the given points.
+     */
+    public static Path2D.Float generateInOrderQuadCurve(PointList points, boolean reversed) {
+        Path2D.Float path = new GeneralPath();
+        int n = points.size();
+
+        path.moveTo(points.getX(0), points.getY(0));
+        for (int i = 0; i < n - 1; i++) {
+            quadTo(path, points, i, reversed);
+        }
+
+        quadTo(path, points, n - 2, false);
+        path.closePath();
+
+        return path;
+    }
+
+    /**
+     * Curve from point i to point i + 1, with the control point of
+     * {@link PointUtils#getControlPoint(Point, Point)} or, if opposite,
+     * {@link PointUtils#getOppositeControlPoint(Point, Point)}.
+     */
+    private static void quadTo(Path2D.Float path, PointList points, int i, boolean opposite) {
+        int x1 = points.getX(i), y1 = points.getY(i);
+        int x2 = points.getX(i + 1), y2 = points.getY(i + 1);
+        int sign = opposite ? -1 : 1;
+
+        int controlX = (x1 + x2) / 2 + sign * Math.abs(y1 - y2);
+        int controlY = (y1 + y2) / 2 + sign * Math.abs(x1 - x2);
+
+        path.quadTo((float) controlX, (float) controlY, (float) x2, (float) y2);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,146 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+package com.wmorellato.mandalas.drawing;
+
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.stream.IntStream;
+
+import com.wmorellato.mandalas.raster.MandalaRaster;
+
+/**
+ * Paint the elements of a mandala on several threads. The elements are split
+ * in consecutive groups, each group is painted into its own label buffer, and
+ * the buffers are merged in the order of the groups: a pixel painted by a later
+ * group replaces the one below it, exactly as when the elements are painted one
+ * after the other on a single buffer.
+ */
+public class ParallelRenderer {
+    // below this number of pixels the extra buffers cost more than they save
+    private static final int MIN_PARALLEL_PIXELS = 128 * 128;
+    // rows merged by each task
+    private static final int MERGE_ROWS = 64;
+
+    // one pool per number of threads asked for, a pool can not be resized
+    private static final HashMap<Integer, ForkJoinPool> sPools = new HashMap<>();
+
+    /**
+     * Paints one element of a mandala.
+     */
+    public interface ElementPainter {
+        void paint(ScanlineRasterizer rasterizer, int element);
+    }
+
+    private ParallelRenderer() {
+    }
+
+    /**
+     * Paint elements into a raster that is still blank.
+     *
+     * @param raster   raster receiving the elements
+     * @param originX  x of the drawing written to the first column
+     * @param originY  y of the drawing written to the first row
+     * @param elements number of elements, painted in index order
+     * @param threads  maximum number of threads, 1 paints everything on the
+     *                 calling thread
+     * @param painter
+     */
+    public static void render(MandalaRaster raster, int originX, int originY, int elements, int threads,
+            ElementPainter painter) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int groups = Math.min(elements, threads);
+
+        if (groups < 2 || (long) width * height < MIN_PARALLEL_PIXELS) {
+            paintGroup(raster, raster.getLabels(), originX, originY, 0, elements, painter);
+            return;
+        }
+
+        ForkJoinPool pool = getPool(threads);
+        byte[][] labels = new byte[groups][];
+        labels[0] = raster.getLabels();
+
+        pool.submit(() -> IntStream.range(0, groups).parallel().forEach(k -> {
+            if (k > 0) {
+                labels[k] = new byte[labels[0].length];
+            }
+
+            paintGroup(raster, labels[k], originX, originY, k * elements / groups, (k + 1) * elements / groups,
+                    painter);
+        })).join();
+
+        // the layers share the same layout, so they are merged as flat arrays
+        int bandSize = MERGE_ROWS * raster.getStride();
+        int bands = (labels[0].length + bandSize - 1) / bandSize;
+
+        pool.submit(() -> IntStream.range(0, bands).parallel().forEach(band -> {
+            int start = band * bandSize;
+            int end = Math.min(labels[0].length, start + bandSize);
+
+            for (int k = 1; k < groups; k++) {
+                byte[] layer = labels[k];
+
+                for (int i = start; i < end; i++) {
+                    if (layer[i] != MandalaRaster.BACKGROUND) {
+                        labels[0][i] = layer[i];
+                    }
+                }
+            }
+        })).join();
+    }
+
+    private static void paintGroup(MandalaRaster raster, byte[] labels, int originX, int originY, int first,
+            int end, ElementPainter painter) {
+        ScanlineRasterizer rasterizer = new ScanlineRasterizer(labels, raster.getOffset(), raster.getStride(),
+                raster.getWidth(), raster.getHeight());
+        rasterizer.setOrigin(originX, originY);
+
+        for (int i = first; i < end; i++) {
+            painter.paint(rasterizer, i);
+        }
+    }
+
+    /**
+     * Pool with exactly the given number of threads. Callers asking for another
+     * number get a pool of their own instead of the size of the first caller;
+     * pools are kept rather than replaced, since another mandala may still be
+     * painting on them.
+     */
+    private static synchronized ForkJoinPool getPool(int threads) {
+        return sPools.computeIfAbsent(threads, size -> new ForkJoinPool(size, pool -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName("Mandalas-Render-" + size + "-" + t.getPoolIndex());
+            t.setDaemon(true);
+
+            return t;
+        }, null, false));
+    }
+
+    /**
+     * Stop the threads used for painting. They are created again if needed.
+     */
+    public static synchronized void shutdown() {
+        for (ForkJoinPool pool : sPools.values()) {
+            pool.shutdownNow();
+        }
+
+        sPools.clear();
+    }
+}
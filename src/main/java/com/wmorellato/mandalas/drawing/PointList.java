@@ -0,0 +1,89 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+package com.wmorellato.mandalas.drawing;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of integer points packed in a single array, x and y one after
+ * the other. Used to build the vertices of the elements without creating an
+ * object per point.
+ */
+public class PointList {
+    int[] mCoords;
+    int mSize = 0;
+
+    public PointList() {
+        this(16);
+    }
+
+    public PointList(int capacity) {
+        mCoords = new int[Math.max(2, capacity * 2)];
+    }
+
+    /**
+     * Add a point at the end of the list.
+     *
+     * @param x
+     * @param y
+     */
+    public void add(int x, int y) {
+        if (mSize * 2 == mCoords.length) {
+            mCoords = Arrays.copyOf(mCoords, mCoords.length * 2);
+        }
+
+        mCoords[mSize * 2] = x;
+        mCoords[mSize * 2 + 1] = y;
+        mSize++;
+    }
+
+    /**
+     * Add a point given in polar coordinates, rounded as
+     * {@link PointUtils#polarToXY(int, int, int, int)} does.
+     *
+     * @param cx      x of the pole
+     * @param cy      y of the pole
+     * @param radius
+     * @param degrees
+     */
+    public void addPolar(int cx, int cy, int radius, int degrees) {
+        add(cx + (int) (TrigTable.cos(degrees) * radius), cy + (int) (TrigTable.sin(degrees) * radius));
+    }
+
+    public int getX(int i) {
+        return mCoords[i * 2];
+    }
+
+    public int getY(int i) {
+        return mCoords[i * 2 + 1];
+    }
+
+    public void setY(int i, int y) {
+        mCoords[i * 2 + 1] = y;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        mSize = 0;
+    }
+}
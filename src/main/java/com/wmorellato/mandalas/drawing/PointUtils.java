@@ -34,8 +34,23 @@ public class PointUtils {
      * @return
      */
     public static Point polarToXY(int cx, int cy, int radius, int degrees) {
-        return new Point(cx + (int) (Math.cos(Math.toRadians(degrees)) * radius),
-                cy + (int) (Math.sin(Math.toRadians(degrees)) * radius));
+        return new Point(cx + (int) (TrigTable.cos(degrees) * radius), cy + (int) (TrigTable.sin(degrees) * radius));
+    }
+
+    /**
+     * Distance from the pole to a point, rounded down.
+     * 
+     * @param cx
+     * @param cy
+     * @param x
+     * @param y
+     * @return the radius of the point in polar coordinates.
+     */
+    public static int getRadius(int cx, int cy, int x, int y) {
+        int tx = x - cx;
+        int ty = y - cy;
+
+        return (int) Math.sqrt(tx * tx + ty * ty);
     }
 
     public static PolarPoint XYToPolar(int cx, int cy, Point p) {
@@ -59,18 +74,32 @@ public class PointUtils {
      * @return
      */
     public static Point getSymmetricPoint(Point p1, int cx, int cy, int centralAngle) {
-        int tx = p1.x - cx;
-        int ty = p1.y - cy;
+        return polarToXY(cx, cy, getRadius(cx, cy, p1.x, p1.y), getSymmetricAngle(p1.x, p1.y, cx, cy, centralAngle));
+    }
 
-        double r = Math.sqrt(tx * tx + ty * ty);
-        double theta = Math.toDegrees(Math.atan2(ty, tx));
+    /**
+     * Add to a list the point symmetric to (x, y), as
+     * {@link #getSymmetricPoint(Point, int, int, int)} does.
+     * 
+     * @param points
+     * @param x
+     * @param y
+     * @param cx
+     * @param cy
+     * @param centralAngle
+     */
+    public static void addSymmetricPoint(PointList points, int x, int y, int cx, int cy, int centralAngle) {
+        points.addPolar(cx, cy, getRadius(cx, cy, x, y), getSymmetricAngle(x, y, cx, cy, centralAngle));
+    }
 
+    private static int getSymmetricAngle(int x, int y, int cx, int cy, int centralAngle) {
+        double theta = Math.toDegrees(Math.atan2(y - cy, x - cx));
         double deltaAngle = Math.abs(theta - centralAngle * 1.0d);
 
         if (theta > centralAngle) {
-            return polarToXY(cx, cy, (int) r, (int) (centralAngle - deltaAngle));
+            return (int) (centralAngle - deltaAngle);
         } else {
-            return polarToXY(cx, cy, (int) r, (int) (centralAngle + deltaAngle));
+            return (int) (centralAngle + deltaAngle);
         }
     }
 
@@ -0,0 +1,278 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+package com.wmorellato.mandalas.drawing;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * A shape flattened into straight segments, kept as plain float coordinates so
+ * it can be drawn many times, under different transforms, without flattening
+ * the curves again.
+ *
+ * Points closer than the tolerance to the line joining their neighbours are
+ * dropped (Douglas-Peucker), so curves with many vertices do not turn into
+ * lots of tiny segments.
+ */
+public class Polyline {
+    // flatness, in pixels, for small and big mandalas
+    private static final double MIN_TOLERANCE = 0.05;
+    private static final double MAX_TOLERANCE = 0.25;
+    private static final double TOLERANCE_PER_RADIUS = 0.00025;
+
+    // x, y of every point; closed subpaths repeat their first point at the end
+    final float[] mCoords;
+    // index of the first point of each subpath, followed by the number of points
+    final int[] mStarts;
+    final Rectangle2D mBounds;
+
+    private Polyline(float[] coords, int[] starts) {
+        mCoords = coords;
+        mStarts = starts;
+        mBounds = computeBounds();
+    }
+
+    /**
+     * Flatness tolerance for the elements of a mandala: a fraction of a pixel that
+     * grows with the radius, since the same error is less visible on bigger
+     * mandalas.
+     *
+     * @param radius radius of the mandala
+     * @return the tolerance, in pixels.
+     */
+    public static double toleranceFor(int radius) {
+        return Math.min(MAX_TOLERANCE, Math.max(MIN_TOLERANCE, radius * TOLERANCE_PER_RADIUS));
+    }
+
+    /**
+     * Flatten a shape and simplify the result.
+     *
+     * @param shape
+     * @param tolerance maximum distance, in pixels, between the shape and the
+     *                  polyline, for each of the two steps
+     * @return the {@link Polyline} of the shape.
+     */
+    public static Polyline of(Shape shape, double tolerance) {
+        PathIterator path = shape.getPathIterator(null);
+        double[] coords = new double[6];
+        float[] points = new float[64];
+        int[] starts = new int[4];
+        int count = 0;
+        int subpaths = 0;
+        int start = 0;
+
+        while (!path.isDone()) {
+            int type = path.currentSegment(coords);
+
+            if (type == PathIterator.SEG_MOVETO || type == PathIterator.SEG_CLOSE) {
+                if (count - start > 1) {
+                    if (type == PathIterator.SEG_CLOSE) {
+                        points = add(points, count++, points[start * 2], points[start * 2 + 1]);
+                    }
+
+                    count = start + simplify(points, start, count - start, tolerance);
+
+                    if (subpaths + 1 >= starts.length) {
+                        starts = Arrays.copyOf(starts, starts.length * 2);
+                    }
+
+                    starts[subpaths++] = start;
+                } else {
+                    // a lone point draws nothing
+                    count = start;
+                }
+
+                start = count;
+            }
+
+            if (type == PathIterator.SEG_QUADTO) {
+                float x0 = points[count * 2 - 2], y0 = points[count * 2 - 1];
+                // a chord of 1/n of the curve is at most |p0 - 2c + p1| / 4n² away from it
+                double a = Math.hypot(x0 - 2 * coords[0] + coords[2], y0 - 2 * coords[1] + coords[3]);
+                int n = Math.max(1, (int) Math.ceil(Math.sqrt(a / (4 * tolerance))));
+
+                for (int i = 1; i < n; i++) {
+                    double t = (double) i / n;
+                    double u = 1 - t;
+
+                    points = add(points, count++, (float) (u * u * x0 + 2 * u * t * coords[0] + t * t * coords[2]),
+                            (float) (u * u * y0 + 2 * u * t * coords[1] + t * t * coords[3]));
+                }
+
+                points = add(points, count++, (float) coords[2], (float) coords[3]);
+            } else if (type == PathIterator.SEG_CUBICTO) {
+                throw new IllegalArgumentException("Cubic curves are not supported");
+            } else if (type != PathIterator.SEG_CLOSE) {
+                points = add(points, count++, (float) coords[0], (float) coords[1]);
+            }
+
+            path.next();
+        }
+
+        if (count - start > 1) {
+            count = start + simplify(points, start, count - start, tolerance);
+            starts = Arrays.copyOf(starts, Math.max(starts.length, subpaths + 2));
+            starts[subpaths++] = start;
+        } else {
+            count = start;
+        }
+
+        starts = Arrays.copyOf(starts, subpaths + 1);
+        starts[subpaths] = count;
+
+        return new Polyline(Arrays.copyOf(points, count * 2), starts);
+    }
+
+    private static float[] add(float[] points, int index, float x, float y) {
+        if (index * 2 + 1 >= points.length) {
+            points = Arrays.copyOf(points, points.length * 2);
+        }
+
+        points[index * 2] = x;
+        points[index * 2 + 1] = y;
+
+        return points;
+    }
+
+    /**
+     * Drop the points of a subpath that are within the tolerance of the segment
+     * joining the points kept around them, moving the kept points to the front.
+     *
+     * @return the number of points kept.
+     */
+    private static int simplify(float[] points, int first, int count, double tolerance) {
+        boolean[] keep = new boolean[count];
+        int[] stack = new int[64];
+        int top = 0;
+
+        keep[0] = true;
+        keep[count - 1] = true;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+
+        while (top > 0) {
+            int to = stack[--top];
+            int from = stack[--top];
+            double ax = points[(first + from) * 2], ay = points[(first + from) * 2 + 1];
+            double dx = points[(first + to) * 2] - ax, dy = points[(first + to) * 2 + 1] - ay;
+            double length = Math.sqrt(dx * dx + dy * dy);
+            double farthest = tolerance;
+            int split = -1;
+
+            for (int i = from + 1; i < to; i++) {
+                double px = points[(first + i) * 2] - ax, py = points[(first + i) * 2 + 1] - ay;
+                // distance to the segment, or to its first point if it has no length
+                double distance = length == 0 ? Math.sqrt(px * px + py * py) : Math.abs(px * dy - py * dx) / length;
+
+                if (distance > farthest) {
+                    farthest = distance;
+                    split = i;
+                }
+            }
+
+            if (split > 0) {
+                keep[split] = true;
+
+                if (top + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+
+                stack[top++] = from;
+                stack[top++] = split;
+                stack[top++] = split;
+                stack[top++] = to;
+            }
+        }
+
+        int kept = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                points[(first + kept) * 2] = points[(first + i) * 2];
+                points[(first + kept) * 2 + 1] = points[(first + i) * 2 + 1];
+                kept++;
+            }
+        }
+
+        return kept;
+    }
+
+    private Rectangle2D computeBounds() {
+        if (mCoords.length == 0) {
+            return new Rectangle2D.Float();
+        }
+
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+
+        for (int i = 0; i < mCoords.length; i += 2) {
+            minX = Math.min(minX, mCoords[i]);
+            maxX = Math.max(maxX, mCoords[i]);
+            minY = Math.min(minY, mCoords[i + 1]);
+            maxY = Math.max(maxY, mCoords[i + 1]);
+        }
+
+        return new Rectangle2D.Float(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * Bounds of the polyline after a transform. The corners of the untransformed
+     * bounds are transformed, so the result may be larger than the exact bounds.
+     *
+     * @param at
+     * @return the bounds of the transformed polyline.
+     */
+    public Rectangle2D getBounds(AffineTransform at) {
+        return at.createTransformedShape(mBounds).getBounds2D();
+    }
+
+    public Rectangle2D getBounds() {
+        return (Rectangle2D) mBounds.clone();
+    }
+
+    public int getSubpathCount() {
+        return mStarts.length - 1;
+    }
+
+    /**
+     * Index of the first point of a subpath.
+     *
+     * @param subpath
+     * @return the index of the point; the subpath ends where the next one starts.
+     */
+    public int getSubpathStart(int subpath) {
+        return mStarts[subpath];
+    }
+
+    public int getPointCount() {
+        return mStarts[mStarts.length - 1];
+    }
+
+    public float getX(int point) {
+        return mCoords[point * 2];
+    }
+
+    public float getY(int point) {
+        return mCoords[point * 2 + 1];
+    }
+}
@@ -0,0 +1,508 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+package com.wmorellato.mandalas.drawing;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+
+/**
+ * Draw paths made of lines and quadratic curves straight into a buffer of
+ * labels, without going through Java2D. Curves are flattened into segments
+ * and the segments are drawn one pixel wide, or filled with the even-odd rule.
+ *
+ * Coordinates are snapped to a grid of 1/1024 of a pixel and pixel centers are
+ * on integer coordinates, the same conventions of the default one pixel wide
+ * stroke of Java2D, so both draw nearly the same pixels.
+ */
+public class ScanlineRasterizer {
+    private static final int SHIFT = 10;
+    private static final int ONE = 1 << SHIFT;
+    private static final int HALF = ONE / 2;
+    // change of direction, in pixels, allowed between two segments of a curve
+    private static final double MAX_SECOND_DIFFERENCE = 4;
+    private static final int MIN_CURVE_SEGMENTS = 4;
+    // curves bigger than this, in pixels, are split before being flattened
+    private static final double MAX_CURVE_SIZE = 1024;
+
+    final byte[] mPixels;
+    final int mOffset;
+    final int mStride;
+    final int mWidth;
+    final int mHeight;
+    int mOriginX = 0;
+    int mOriginY = 0;
+    byte mLabel = 1;
+
+    // edges collected while filling, as x0, y0, x1, y1 in fixed point
+    int[] mEdges = new int[64];
+    int mEdgeCount = 0;
+    int[] mCrossings = new int[16];
+
+    public ScanlineRasterizer(byte[] pixels, int offset, int stride, int width, int height) {
+        mPixels = pixels;
+        mOffset = offset;
+        mStride = stride;
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * Move the buffer over the drawing: the point (x, y) of the paths is written
+     * to the pixel at column x - originX and row y - originY.
+     *
+     * @param x
+     * @param y
+     */
+    public void setOrigin(int x, int y) {
+        mOriginX = x;
+        mOriginY = y;
+    }
+
+    /**
+     * Label written by the next strokes and fills.
+     *
+     * @param label value between 0 and 255
+     */
+    public void setLabel(int label) {
+        mLabel = (byte) label;
+    }
+
+    /**
+     * Draw the outline of a path, one pixel wide.
+     *
+     * @param path iterator over the (already transformed) path
+     */
+    public void stroke(PathIterator path) {
+        iterate(path, false);
+    }
+
+    /**
+     * Draw a polyline, one pixel wide, after applying a transform to its points.
+     * Each point is transformed and snapped once, however many segments share it.
+     *
+     * @param polyline
+     * @param at       transform of the points, or null for none
+     */
+    public void stroke(Polyline polyline, AffineTransform at) {
+        double m00 = 1, m01 = 0, m02 = 0, m10 = 0, m11 = 1, m12 = 0;
+
+        if (at != null) {
+            m00 = at.getScaleX();
+            m01 = at.getShearX();
+            m02 = at.getTranslateX();
+            m10 = at.getShearY();
+            m11 = at.getScaleY();
+            m12 = at.getTranslateY();
+        }
+
+        // the origin is removed in fixed point, so the pixels do not depend on it
+        int originX = mOriginX << SHIFT;
+        int originY = mOriginY << SHIFT;
+
+        for (int s = 0; s < polyline.getSubpathCount(); s++) {
+            int end = polyline.getSubpathStart(s + 1);
+            int x0 = 0, y0 = 0;
+
+            for (int p = polyline.getSubpathStart(s); p < end; p++) {
+                double x = polyline.getX(p), y = polyline.getY(p);
+                int x1 = toFixed(m00 * x + m01 * y + m02) - originX;
+                int y1 = toFixed(m10 * x + m11 * y + m12) - originY;
+
+                if (p > polyline.getSubpathStart(s)) {
+                    line(x0, y0, x1, y1);
+                }
+
+                x0 = x1;
+                y0 = y1;
+            }
+        }
+    }
+
+    /**
+     * Fill the inside of a path using the even-odd rule. Open subpaths are closed
+     * implicitly. Like the fills of Java2D, a pixel (x, y) is filled if the point
+     * (x + 0.5, y + 0.5) is inside the path.
+     *
+     * @param path iterator over the (already transformed) path
+     */
+    public void fillEvenOdd(PathIterator path) {
+        mEdgeCount = 0;
+        iterate(path, true);
+        fillEdges();
+    }
+
+    /**
+     * Walk a path, flattening the curves, and stroke each segment or keep it as
+     * an edge to be filled.
+     */
+    private void iterate(PathIterator path, boolean fill) {
+        double[] coords = new double[6];
+        double startX = 0, startY = 0, x = 0, y = 0;
+
+        while (!path.isDone()) {
+            int type = path.currentSegment(coords);
+
+            for (int i = 0; i < coords.length; i += 2) {
+                coords[i] -= mOriginX;
+                coords[i + 1] -= mOriginY;
+            }
+
+            switch (type) {
+                case PathIterator.SEG_MOVETO:
+                    if (fill) {
+                        segment(x, y, startX, startY, true);
+                    }
+
+                    startX = x = coords[0];
+                    startY = y = coords[1];
+                    break;
+                case PathIterator.SEG_LINETO:
+                    segment(x, y, coords[0], coords[1], fill);
+                    x = coords[0];
+                    y = coords[1];
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    quad(x, y, coords[0], coords[1], coords[2], coords[3], fill);
+                    x = coords[2];
+                    y = coords[3];
+                    break;
+                case PathIterator.SEG_CUBICTO:
+                    throw new IllegalArgumentException("Cubic curves are not supported");
+                case PathIterator.SEG_CLOSE:
+                    segment(x, y, startX, startY, fill);
+                    x = startX;
+                    y = startY;
+                    break;
+            }
+
+            path.next();
+        }
+
+        if (fill) {
+            segment(x, y, startX, startY, true);
+        }
+    }
+
+    /**
+     * Split a quadratic curve where its direction changes sign on either axis,
+     * so each piece is monotonic, and flatten the pieces.
+     */
+    private void quad(double x0, double y0, double cx, double cy, double x1, double y1, boolean fill) {
+        double[] params = new double[2];
+        int count = 0;
+
+        count = addExtremum(params, count, x0, cx, x1);
+        count = addExtremum(params, count, y0, cy, y1);
+
+        if (count == 2 && params[0] > params[1]) {
+            double t = params[0];
+            params[0] = params[1];
+            params[1] = t;
+        }
+
+        double done = 0;
+
+        for (int i = 0; i < count; i++) {
+            // parameter of the split on what is left of the curve
+            double t = (params[i] - done) / (1 - done);
+            double ax = x0 + (cx - x0) * t, ay = y0 + (cy - y0) * t;
+            double bx = cx + (x1 - cx) * t, by = cy + (y1 - cy) * t;
+            double mx = ax + (bx - ax) * t, my = ay + (by - ay) * t;
+
+            monotonicQuad(x0, y0, ax, ay, mx, my, fill);
+            x0 = mx;
+            y0 = my;
+            cx = bx;
+            cy = by;
+            done = params[i];
+        }
+
+        monotonicQuad(x0, y0, cx, cy, x1, y1, fill);
+    }
+
+    private static int addExtremum(double[] params, int count, double p0, double p1, double p2) {
+        boolean monotonic = (p0 <= p1 && p1 <= p2) || (p0 >= p1 && p1 >= p2);
+        double a = p0 - 2 * p1 + p2;
+
+        if (!monotonic && a != 0) {
+            double t = (p0 - p1) / a;
+
+            if (t > 0 && t < 1) {
+                params[count++] = t;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Halve big curves, then cut each one in segments of equal parameter length,
+     * enough for the direction to change by at most a few pixels from one
+     * segment to the next.
+     */
+    private void monotonicQuad(double x0, double y0, double cx, double cy, double x1, double y1, boolean fill) {
+        double width = Math.max(x0, Math.max(cx, x1)) - Math.min(x0, Math.min(cx, x1));
+        double height = Math.max(y0, Math.max(cy, y1)) - Math.min(y0, Math.min(cy, y1));
+
+        if (width > MAX_CURVE_SIZE || height > MAX_CURVE_SIZE) {
+            double ax = (x0 + cx) / 2, ay = (y0 + cy) / 2;
+            double bx = (cx + x1) / 2, by = (cy + y1) / 2;
+            double mx = (ax + bx) / 2, my = (ay + by) / 2;
+
+            monotonicQuad(x0, y0, ax, ay, mx, my, fill);
+            monotonicQuad(mx, my, bx, by, x1, y1, fill);
+            return;
+        }
+
+        // second difference of the curve with a single step
+        double dd = 2 * Math.max(Math.abs(x0 - 2 * cx + x1), Math.abs(y0 - 2 * cy + y1));
+        int n = MIN_CURVE_SEGMENTS;
+
+        while (dd / ((double) n * n) > MAX_SECOND_DIFFERENCE) {
+            n <<= 1;
+        }
+
+        double px = x0, py = y0;
+
+        for (int i = 1; i < n; i++) {
+            double t = (double) i / n;
+            double u = 1 - t;
+            double nx = u * u * x0 + 2 * u * t * cx + t * t * x1;
+            double ny = u * u * y0 + 2 * u * t * cy + t * t * y1;
+
+            segment(px, py, nx, ny, fill);
+            px = nx;
+            py = ny;
+        }
+
+        segment(px, py, x1, y1, fill);
+    }
+
+    private void segment(double x0, double y0, double x1, double y1, boolean fill) {
+        segment(toFixed(x0), toFixed(y0), toFixed(x1), toFixed(y1), fill);
+    }
+
+    private static int toFixed(double v) {
+        return floor(v * ONE);
+    }
+
+    /**
+     * Same as (int) Math.floor(v) for values in the range of an int, without the
+     * call.
+     */
+    private static int floor(double v) {
+        int i = (int) v;
+
+        return v < i ? i - 1 : i;
+    }
+
+    private void segment(int x0, int y0, int x1, int y1, boolean fill) {
+        if (fill) {
+            addEdge(x0, y0, x1, y1);
+        } else {
+            line(x0, y0, x1, y1);
+        }
+    }
+
+    /**
+     * Draw a segment one pixel per step along its longer axis. The first and last
+     * pixels are the nearest ones to the segment at the first and last pixel
+     * centers it crosses along that axis, and the pixels between them follow a
+     * Bresenham line. Pixels out of the buffer are skipped.
+     */
+    private void line(int x0, int y0, int x1, int y1) {
+        boolean xMajor = Math.abs(x1 - x0) >= Math.abs(y1 - y0);
+        int a0 = xMajor ? x0 : y0, b0 = xMajor ? y0 : x0;
+        int a1 = xMajor ? x1 : y1, b1 = xMajor ? y1 : x1;
+        int dir = a1 >= a0 ? 1 : -1;
+
+        // first and last pixel centers crossed along the major axis
+        int start = dir > 0 ? (a0 + ONE - 1) >> SHIFT : a0 >> SHIFT;
+        int end = dir > 0 ? a1 >> SHIFT : (a1 + ONE - 1) >> SHIFT;
+        int steps = (end - start) * dir;
+
+        if (steps < 0) {
+            return;
+        }
+
+        // halfway cases go towards the end of the segment
+        boolean roundUp = b1 >= b0;
+        double slope = a1 == a0 ? 0 : (double) (b1 - b0) / (a1 - a0);
+        int bStart = round(b0 + floor(((double) start * ONE - a0) * slope), roundUp);
+
+        if (steps == 0) {
+            plotAxis(xMajor, start, bStart);
+            return;
+        }
+
+        int bEnd = round(b0 + floor(((double) end * ONE - a0) * slope), roundUp);
+        // at most one step on the minor axis per step on the major one
+        int rise = Math.min(Math.abs(bEnd - bStart), steps);
+        int sign = bEnd >= bStart ? 1 : -1;
+        bEnd = bStart + sign * rise;
+
+        int limit = (xMajor ? mWidth : mHeight) - 1;
+        int from = Math.max(0, dir > 0 ? -start : start - limit);
+        int to = Math.min(steps, dir > 0 ? limit - start : start);
+
+        // offset along the minor axis is floor((2 * i * rise + steps) / (2 * steps)),
+        // which for the first pixel of the segment is always 0
+        int error = steps;
+        int minor = bStart;
+
+        if (from > 0) {
+            long initial = 2L * from * rise + steps;
+            error = (int) (initial % (2L * steps));
+            minor += sign * (int) (initial / (2L * steps));
+        }
+
+        int major = start + dir * from;
+
+        int minorSize = xMajor ? mHeight : mWidth;
+        int majorStep = xMajor ? dir : dir * mStride;
+        int minorStep = xMajor ? sign * mStride : sign;
+        int index = mOffset + (xMajor ? minor * mStride + major : major * mStride + minor);
+        int increment = 2 * rise;
+        int threshold = 2 * steps;
+        byte[] pixels = mPixels;
+        byte label = mLabel;
+
+        if (Math.min(bStart, bEnd) >= 0 && Math.max(bStart, bEnd) < minorSize) {
+            // the whole segment is inside the buffer
+            walk(pixels, label, index, to - from + 1, majorStep, minorStep, error, increment, threshold);
+            return;
+        }
+
+        for (int i = from; i <= to; i++) {
+            if (minor >= 0 && minor < minorSize) {
+                pixels[index] = label;
+            }
+
+            index += majorStep;
+            error += increment;
+
+            if (error >= threshold) {
+                error -= threshold;
+                minor += sign;
+                index += minorStep;
+            }
+        }
+    }
+
+    private static void walk(byte[] pixels, byte label, int index, int count, int majorStep, int minorStep,
+            int error, int increment, int threshold) {
+        for (int i = 0; i < count; i++) {
+            pixels[index] = label;
+            error += increment;
+
+            // all ones when the error reaches the threshold: steps on the minor axis
+            // are taken without a branch, which lines near the diagonal mispredict
+            int mask = (threshold - 1 - error) >> 31;
+            error -= threshold & mask;
+            index += majorStep + (minorStep & mask);
+        }
+    }
+
+    private static int round(int v, boolean up) {
+        return up ? (v + HALF) >> SHIFT : -((-v + HALF) >> SHIFT);
+    }
+
+    private void plotAxis(boolean xMajor, int major, int minor) {
+        int x = xMajor ? major : minor;
+        int y = xMajor ? minor : major;
+
+        if (x >= 0 && y >= 0 && x < mWidth && y < mHeight) {
+            mPixels[mOffset + y * mStride + x] = mLabel;
+        }
+    }
+
+    private void addEdge(int x0, int y0, int x1, int y1) {
+        if (y0 == y1) {
+            return;
+        }
+
+        if (mEdgeCount * 4 == mEdges.length) {
+            mEdges = Arrays.copyOf(mEdges, mEdges.length * 2);
+        }
+
+        int i = mEdgeCount++ * 4;
+        mEdges[i] = x0;
+        mEdges[i + 1] = y0;
+        mEdges[i + 2] = x1;
+        mEdges[i + 3] = y1;
+    }
+
+    /**
+     * Fill the rows between the edges collected, row by row, pairing the
+     * crossings of the edges with the center of the row.
+     */
+    private void fillEdges() {
+        if (mEdgeCount == 0) {
+            return;
+        }
+
+        int minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+
+        for (int e = 0; e < mEdgeCount; e++) {
+            minY = Math.min(minY, Math.min(mEdges[e * 4 + 1], mEdges[e * 4 + 3]));
+            maxY = Math.max(maxY, Math.max(mEdges[e * 4 + 1], mEdges[e * 4 + 3]));
+        }
+
+        int firstRow = Math.max(0, minY >> SHIFT);
+        int lastRow = Math.min(mHeight - 1, maxY >> SHIFT);
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            int center = (row << SHIFT) + ONE / 2;
+            int count = 0;
+
+            for (int e = 0; e < mEdgeCount; e++) {
+                int i = e * 4;
+                int ya = mEdges[i + 1], yb = mEdges[i + 3];
+
+                // half-open so a vertex shared by two edges is counted once
+                if ((ya <= center) == (yb <= center)) {
+                    continue;
+                }
+
+                int xa = mEdges[i], xb = mEdges[i + 2];
+                int x = xa + (int) ((long) (center - ya) * (xb - xa) / (yb - ya));
+
+                if (count == mCrossings.length) {
+                    mCrossings = Arrays.copyOf(mCrossings, count * 2);
+                }
+
+                mCrossings[count++] = x;
+            }
+
+            Arrays.sort(mCrossings, 0, count);
+
+            for (int k = 0; k + 1 < count; k += 2) {
+                // pixels whose center is between the two crossings
+                int from = Math.max(0, (mCrossings[k] - ONE / 2 + ONE - 1) >> SHIFT);
+                int to = Math.min(mWidth, (mCrossings[k + 1] - ONE / 2 + ONE - 1) >> SHIFT);
+                int base = mOffset + row * mStride;
+
+                for (int x = from; x < to; x++) {
+                    mPixels[base + x] = mLabel;
+                }
+            }
+        }
+    }
+}
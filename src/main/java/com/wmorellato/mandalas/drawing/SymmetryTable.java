@@ -0,0 +1,225 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+package com.wmorellato.mandalas.drawing;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Lookup table used to render only one wedge of a mandala and replicate it.
+ *
+ * A mandala with n sections is symmetric under rotations of 360/n degrees and
+ * under the reflection on the horizontal axis, so every pixel has a
+ * counterpart inside the wedge between 0 and 180/n degrees. The table stores,
+ * for each pixel of the (2r+1)x(2r+1) image, the index of that counterpart in
+ * a smaller buffer covering only the wedge.
+ */
+public class SymmetryTable {
+    // margin, in pixels, around the wedge so rounded positions stay inside it
+    private static final int MARGIN = 2;
+    // tables are big (one int per pixel), keep only the last ones up to this size
+    private static final long MAX_CACHED_BYTES = 32L << 20;
+
+    private static final Map<Long, SymmetryTable> sCache = new LinkedHashMap<>(16, 0.75f, true);
+    private static long sCachedBytes = 0;
+
+    final int mRadius;
+    final int mSections;
+    int mWedgeX, mWedgeY, mWedgeWidth, mWedgeHeight;
+    int[] mSource;
+
+    private SymmetryTable(int radius, int sections) {
+        mRadius = radius;
+        mSections = sections;
+
+        computeWedgeBounds();
+        computeSources();
+    }
+
+    /**
+     * Get the table for a mandala with the given radius and number of sections,
+     * building it if it is not cached.
+     *
+     * @param radius
+     * @param sections
+     * @return the {@link SymmetryTable} for the mandala.
+     */
+    public static SymmetryTable get(int radius, int sections) {
+        long key = ((long) radius << 32) | sections;
+
+        synchronized (sCache) {
+            SymmetryTable table = sCache.get(key);
+
+            if (table == null) {
+                table = new SymmetryTable(radius, sections);
+                cache(key, table);
+            }
+
+            return table;
+        }
+    }
+
+    /**
+     * Add a table to the cache, dropping the least recently used ones until the
+     * cache fits in its memory limit again. Tables bigger than the whole cache
+     * are not kept.
+     */
+    private static void cache(long key, SymmetryTable table) {
+        if (table.getByteSize() > MAX_CACHED_BYTES) {
+            return;
+        }
+
+        sCache.put(key, table);
+        sCachedBytes += table.getByteSize();
+
+        Iterator<SymmetryTable> it = sCache.values().iterator();
+
+        while (sCachedBytes > MAX_CACHED_BYTES && it.hasNext()) {
+            sCachedBytes -= it.next().getByteSize();
+            it.remove();
+        }
+    }
+
+    /**
+     * Drop every cached table. Called when the generator is shut down.
+     */
+    public static void clearCache() {
+        synchronized (sCache) {
+            sCache.clear();
+            sCachedBytes = 0;
+        }
+    }
+
+    /**
+     * Memory taken by the lookup table.
+     *
+     * @return the size of the table in bytes.
+     */
+    public long getByteSize() {
+        return mSource.length * 4L;
+    }
+
+    /**
+     * Check if a mandala with this number of sections can be rendered by a wedge.
+     *
+     * @param sections
+     * @return true if a table can be built.
+     */
+    public static boolean supports(int sections) {
+        return sections >= 2;
+    }
+
+    /**
+     * Bounding box of the wedge, extended up to the corners of the image, which
+     * are farther from the center than the radius.
+     */
+    private void computeWedgeBounds() {
+        double halfAngle = 180.0 / mSections;
+        double maxRadius = mRadius * Math.sqrt(2) + MARGIN;
+
+        double minX = mRadius, maxX = mRadius, minY = mRadius, maxY = mRadius;
+        double[] angles = { 0, halfAngle, 90, 180 };
+
+        for (double a : angles) {
+            if (a > halfAngle) {
+                continue;
+            }
+
+            double x = mRadius + Math.cos(Math.toRadians(a)) * maxRadius;
+            double y = mRadius + Math.sin(Math.toRadians(a)) * maxRadius;
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+
+        mWedgeX = (int) Math.floor(minX) - MARGIN;
+        mWedgeY = (int) Math.floor(minY) - MARGIN;
+        mWedgeWidth = (int) Math.ceil(maxX) + MARGIN - mWedgeX + 1;
+        mWedgeHeight = (int) Math.ceil(maxY) + MARGIN - mWedgeY + 1;
+    }
+
+    /**
+     * Fold the angle of every pixel into the wedge and store the index of the
+     * folded position in the wedge buffer.
+     */
+    private void computeSources() {
+        int size = mRadius * 2 + 1;
+        double sectionAngle = 360.0 / mSections;
+
+        mSource = new int[size * size];
+
+        for (int y = 0; y < size; y++) {
+            int dy = y - mRadius;
+
+            for (int x = 0; x < size; x++) {
+                int dx = x - mRadius;
+
+                double r = Math.sqrt(dx * dx + dy * dy);
+                double theta = Math.toDegrees(Math.atan2(dy, dx));
+                double t = ((theta % sectionAngle) + sectionAngle) % sectionAngle;
+                double phi = Math.toRadians(t <= sectionAngle / 2 ? t : sectionAngle - t);
+
+                int sx = mRadius + (int) Math.round(Math.cos(phi) * r) - mWedgeX;
+                int sy = mRadius + (int) Math.round(Math.sin(phi) * r) - mWedgeY;
+
+                mSource[y * size + x] = sy * mWedgeWidth + sx;
+            }
+        }
+    }
+
+    /**
+     * Fill a whole image from the pixels of the rendered wedge.
+     *
+     * @param wedge  pixels of the wedge buffer, row by row
+     * @param target pixels of the image, row by row
+     */
+    public void replicate(byte[] wedge, byte[] target) {
+        for (int i = 0; i < mSource.length; i++) {
+            target[i] = wedge[mSource[i]];
+        }
+    }
+
+    /**
+     * Area covered by the wedge buffer, in the coordinates of the mandala.
+     *
+     * @return the bounds of the wedge buffer.
+     */
+    public Rectangle2D getWedgeBounds() {
+        return new Rectangle2D.Double(mWedgeX, mWedgeY, mWedgeWidth, mWedgeHeight);
+    }
+
+    public int getWedgeX() {
+        return mWedgeX;
+    }
+
+    public int getWedgeY() {
+        return mWedgeY;
+    }
+
+    public int getWedgeWidth() {
+        return mWedgeWidth;
+    }
+
+    public int getWedgeHeight() {
+        return mWedgeHeight;
+    }
+}
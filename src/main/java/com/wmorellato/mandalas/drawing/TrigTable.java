@@ -0,0 +1,59 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+package com.wmorellato.mandalas.drawing;
+
+/**
+ * Sine and cosine of whole degrees. The values are computed once with
+ * {@link Math#toRadians(double)}, exactly as the points were computed before,
+ * so using the table does not move any point. Angles out of the table fall back
+ * to the same computation.
+ */
+public class TrigTable {
+    // angles from -MAX_DEGREES to MAX_DEGREES are kept
+    private static final int MAX_DEGREES = 720;
+    private static final double[] COS = new double[2 * MAX_DEGREES + 1];
+    private static final double[] SIN = new double[2 * MAX_DEGREES + 1];
+
+    static {
+        for (int d = -MAX_DEGREES; d <= MAX_DEGREES; d++) {
+            COS[d + MAX_DEGREES] = Math.cos(Math.toRadians(d));
+            SIN[d + MAX_DEGREES] = Math.sin(Math.toRadians(d));
+        }
+    }
+
+    private TrigTable() {
+    }
+
+    public static double cos(int degrees) {
+        if (degrees < -MAX_DEGREES || degrees > MAX_DEGREES) {
+            return Math.cos(Math.toRadians(degrees));
+        }
+
+        return COS[degrees + MAX_DEGREES];
+    }
+
+    public static double sin(int degrees) {
+        if (degrees < -MAX_DEGREES || degrees > MAX_DEGREES) {
+            return Math.sin(Math.toRadians(degrees));
+        }
+
+        return SIN[degrees + MAX_DEGREES];
+    }
+}
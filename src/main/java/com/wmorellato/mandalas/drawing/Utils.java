@@ -19,7 +19,6 @@ along with this program.  If not, see <https://www.gnu.org/licenses/>.
 package com.wmorellato.mandalas.drawing;
 
 import java.util.ArrayList;
-import java.awt.image.*;
 import java.awt.*;
 
 /**
@@ -44,44 +43,4 @@ public class Utils {
         Point[] points = new Point[cleanList.size()];
         return cleanList.toArray(points);
     }
-
-    public static int[][] convertTo2DUsingGetRGB(BufferedImage image) {
-        int width = image.getWidth();
-        int height = image.getHeight();
-        int[][] result = new int[height][width];
-
-        for (int row = 0; row < height; row++) {
-            for (int col = 0; col < width; col++) {
-                result[row][col] = image.getRGB(col, row);
-            }
-        }
-
-        return result;
-    }
-
-    /**
-     * Paint a shape
-     * 
-     * @param g2
-     * @param s
-     * @param c
-     */
-    public static void paintShape(Graphics2D g2, Shape s, Color c) {
-        g2.setPaint(c);
-        g2.draw(s);
-        g2.setPaint(Color.BLACK);
-    }
-
-    /**
-     * Fill a shape
-     * 
-     * @param g2
-     * @param s
-     * @param c
-     */
-    public static void fillShape(Graphics2D g2, Shape s, Color c) {
-        g2.setPaint(c);
-        g2.fill(s);
-        g2.setPaint(Color.BLACK);
-    }
 }
\ No newline at end of file
@@ -0,0 +1,263 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+package com.wmorellato.mandalas.generation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import com.wmorellato.mandalas.raster.SpanRaster;
+
+/**
+ * Keep the rasters of mandalas in compressed files, so they survive restarts
+ * and are shared by every world. Each file is named after a hash of its
+ * {@link RasterCache.Key} and also holds the key itself, to tell collisions
+ * apart. Files are read through a memory mapping.
+ *
+ * The total size of the files is bounded; when it is exceeded the files not
+ * read for the longest time are deleted. The last modification time of a file
+ * is used as its last access, so the order survives restarts too. Files that
+ * cannot be read are deleted, as are the temporary files left behind by writes
+ * interrupted by a crash.
+ */
+public class DiskRasterCache {
+    private static final String EXTENSION = ".msr";
+    private static final String TEMP_PREFIX = "mandala";
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    private final File mFolder;
+    private final long mMaxBytes;
+    private final Logger mLogger;
+    // file name to size, least recently used first
+    private final LinkedHashMap<String, Long> mFiles = new LinkedHashMap<>(16, 0.75f, true);
+    private long mBytes = 0;
+
+    /**
+     * @param folder   where the files are kept, created if needed
+     * @param maxBytes total size of the files, in bytes
+     * @param logger   where failures to read or write are reported
+     */
+    public DiskRasterCache(File folder, long maxBytes, Logger logger) {
+        mFolder = folder;
+        mMaxBytes = maxBytes;
+        mLogger = logger;
+
+        File[] temps = folder.listFiles((dir, name) -> name.startsWith(TEMP_PREFIX) && name.endsWith(TEMP_EXTENSION));
+
+        if (temps != null) {
+            for (File f : temps) {
+                f.delete();
+            }
+        }
+
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(EXTENSION));
+
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+
+            for (File f : files) {
+                mFiles.put(f.getName(), f.length());
+                mBytes += f.length();
+            }
+        }
+    }
+
+    /**
+     * Read a raster from its file.
+     *
+     * @param key
+     * @return the {@link SpanRaster}, or null if it is not cached or the file
+     *         could not be read.
+     */
+    public SpanRaster get(RasterCache.Key key) {
+        String name = fileName(key);
+
+        synchronized (this) {
+            if (mFiles.get(name) == null) {
+                return null;
+            }
+        }
+
+        File file = new File(mFolder, name);
+        // given to the stream, so it is not ended when the stream is dropped
+        Inflater inflater = new Inflater();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            DataInputStream in = new DataInputStream(
+                    new InflaterInputStream(new ByteBufferInputStream(buffer), inflater));
+
+            if (!in.readUTF().equals(key.toString())) {
+                return null;
+            }
+
+            SpanRaster raster = SpanRaster.read(in);
+            file.setLastModified(System.currentTimeMillis());
+
+            return raster;
+        } catch (IOException | RuntimeException e) {
+            // corrupted files may also fail with runtime exceptions of the decoder
+            mLogger.warning(String.format("Could not read cached mandala %s: %s", file.getName(), e));
+            remove(name);
+
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Write a raster to its file, then delete the least recently used files until
+     * the cache fits in its size limit again.
+     *
+     * @param key
+     * @param raster
+     */
+    public void put(RasterCache.Key key, SpanRaster raster) {
+        String name = fileName(key);
+        File file = new File(mFolder, name);
+        File temp = null;
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+        try {
+            mFolder.mkdirs();
+
+            // write to a temporary file first, so readers never see half a file
+            temp = File.createTempFile(TEMP_PREFIX, TEMP_EXTENSION, mFolder);
+
+            try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)), deflater))) {
+                out.writeUTF(key.toString());
+                raster.write(out);
+            }
+
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            mLogger.warning(String.format("Could not cache mandala %s: %s", key, e));
+
+            if (temp != null) {
+                temp.delete();
+            }
+
+            return;
+        } finally {
+            deflater.end();
+        }
+
+        synchronized (this) {
+            Long old = mFiles.put(name, file.length());
+            mBytes += file.length() - (old == null ? 0 : old);
+
+            Iterator<Map.Entry<String, Long>> it = mFiles.entrySet().iterator();
+
+            while (mBytes > mMaxBytes && it.hasNext()) {
+                Map.Entry<String, Long> entry = it.next();
+
+                new File(mFolder, entry.getKey()).delete();
+                mBytes -= entry.getValue();
+                it.remove();
+            }
+        }
+    }
+
+    private synchronized void remove(String name) {
+        Long size = mFiles.remove(name);
+
+        if (size != null) {
+            mBytes -= size;
+            new File(mFolder, name).delete();
+        }
+    }
+
+    public synchronized int size() {
+        return mFiles.size();
+    }
+
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+
+    private static String fileName(RasterCache.Key key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(key.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b));
+            }
+
+            return sb.append(EXTENSION).toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Stream over the bytes of a buffer, used to decompress a mapped file without
+     * copying it first.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer mBuffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            mBuffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return mBuffer.hasRemaining() ? mBuffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!mBuffer.hasRemaining()) {
+                return -1;
+            }
+
+            len = Math.min(len, mBuffer.remaining());
+            mBuffer.get(b, off, len);
+
+            return len;
+        }
+    }
+}
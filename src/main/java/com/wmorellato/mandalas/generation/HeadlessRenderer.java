@@ -0,0 +1,400 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+package com.wmorellato.mandalas.generation;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import com.wmorellato.mandalas.components.Mandala;
+import com.wmorellato.mandalas.components.MandalaAttributes;
+import com.wmorellato.mandalas.config.ConfigurationManager;
+import com.wmorellato.mandalas.drawing.ParallelRenderer;
+import com.wmorellato.mandalas.drawing.SymmetryTable;
+import com.wmorellato.mandalas.raster.SpanRaster;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+/**
+ * Render mandalas from the command line, without a server. The configuration
+ * file of the plugin is read as it is (./config.yml, or the configuration
+ * bundled with the plugin if there is none), and every mandala of a list of
+ * seeds is rendered on all the processors, then written as an image or as a
+ * compressed raster.
+ *
+ * Rasters are written as {@link DiskRasterCache} files, so pointing the output
+ * to the cache folder of the plugin fills the cache before the server starts.
+ * The Bukkit API must be on the class path, since the configuration is read
+ * with it.
+ */
+public class HeadlessRenderer {
+    private static final String USAGE = "Usage: java -cp mandalas.jar:<bukkit jar>:<snakeyaml jar> "
+            + HeadlessRenderer.class.getName() + " --radius <radius> --seeds <a,b,from..to> [--sections <n>]"
+            + " [--config <config.yml>] [--format png|bmp|msr] [--out <folder>] [--threads <n>]";
+    private static final String FORMAT_RASTER = "msr";
+
+    final ConfigurationManager mConfig;
+    final File mFolder;
+    final String mFormat;
+    final DiskRasterCache mCache;
+    final String mFingerprint;
+    final Logger mLogger = Logger.getLogger("Mandalas");
+    private final AtomicLong mRendered = new AtomicLong();
+    private final AtomicLong mFailed = new AtomicLong();
+    private final AtomicLong mPixels = new AtomicLong();
+    private final AtomicLong mSpans = new AtomicLong();
+    private final AtomicLong mImageBytes = new AtomicLong();
+    private final AtomicLong mRenderNanos = new AtomicLong();
+    private final AtomicLong mWriteNanos = new AtomicLong();
+    private final AtomicLong mSlowestNanos = new AtomicLong();
+
+    /**
+     * @param config
+     * @param folder where the files are written, created if needed
+     * @param format "png", "bmp" or "msr"
+     */
+    public HeadlessRenderer(ConfigurationManager config, File folder, String format) {
+        mConfig = config;
+        mFolder = folder;
+        mFormat = format;
+        // the limit of the plugin still applies, unless its cache is disabled
+        long cacheSize = config.getDiskCacheSize() > 0 ? config.getDiskCacheSize() : Long.MAX_VALUE;
+        mCache = format.equals(FORMAT_RASTER) ? new DiskRasterCache(folder, cacheSize, mLogger) : null;
+        mFingerprint = config.getGenerationFingerprint();
+    }
+
+    public static void main(String[] args) {
+        File configFile = new File("config.yml").isFile() ? new File("config.yml") : null;
+        File folder = new File("exports");
+        String format = "png";
+        String seeds = null;
+        int radius = 0;
+        int sections = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+
+                if (value == null) {
+                    throw new IllegalArgumentException("Missing value of " + args[i]);
+                }
+
+                switch (args[i++]) {
+                    case "--config":
+                        configFile = new File(value);
+                        break;
+                    case "--out":
+                        folder = new File(value);
+                        break;
+                    case "--format":
+                        format = value.toLowerCase();
+                        break;
+                    case "--seeds":
+                        seeds = value;
+                        break;
+                    case "--radius":
+                        radius = Integer.parseInt(value);
+                        break;
+                    case "--sections":
+                        sections = Integer.parseInt(value);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+                }
+            }
+
+            if (seeds == null || radius <= 0) {
+                throw new IllegalArgumentException("A radius and a list of seeds are required");
+            }
+
+            if (!format.equals("png") && !format.equals("bmp") && !format.equals(FORMAT_RASTER)) {
+                throw new IllegalArgumentException("Unknown format " + format);
+            }
+
+            long[] seedList = parseSeeds(seeds);
+            ConfigurationManager config = loadConfig(configFile, Math.max(1, threads), seedList.length);
+
+            HeadlessRenderer renderer = new HeadlessRenderer(config, folder, format);
+            renderer.render(seedList, radius, sections > 0 ? sections : config.getNumberOfSections(),
+                    Math.max(1, threads));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        } catch (IOException | InvalidConfigurationException e) {
+            System.err.println(String.format("Could not read %s: %s",
+                    configFile != null ? configFile : "the bundled config.yml", e));
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Read a configuration file, falling back on the values of the default one
+     * just like the plugin does, so the mandalas come out with the same
+     * fingerprint as on the server. Without a file, the default configuration
+     * bundled with the plugin is read as the configuration itself, since the
+     * plugin would have written it to its folder.
+     *
+     * The threads are split between mandalas first; only the ones left over are
+     * used to paint each mandala.
+     *
+     * @param file    configuration file, or null for the bundled one
+     * @param threads total number of threads
+     * @param count   number of mandalas that will be rendered
+     * @return the {@link ConfigurationManager} of the file.
+     * @throws FileNotFoundException if the file, or the bundled configuration
+     *                               when there is no file, does not exist
+     * @throws IOException
+     * @throws InvalidConfigurationException
+     */
+    public static ConfigurationManager loadConfig(File file, int threads, int count)
+            throws IOException, InvalidConfigurationException {
+        YamlConfiguration fc = new YamlConfiguration();
+
+        if (file != null && !file.isFile()) {
+            throw new FileNotFoundException(file + " does not exist");
+        }
+
+        try (InputStream defaults = HeadlessRenderer.class.getResourceAsStream("/config.yml")) {
+            if (defaults == null && file == null) {
+                throw new FileNotFoundException("No configuration file given and none bundled with the plugin");
+            }
+
+            if (file == null) {
+                fc.load(new InputStreamReader(defaults, StandardCharsets.UTF_8));
+            } else if (defaults != null) {
+                fc.setDefaults(YamlConfiguration
+                        .loadConfiguration(new InputStreamReader(defaults, StandardCharsets.UTF_8)));
+            }
+        }
+
+        if (file != null) {
+            fc.load(file);
+        }
+
+        fc.set("generation.render_threads", Math.max(1, threads / Math.max(1, Math.min(threads, count))));
+
+        return new ConfigurationManager(fc);
+    }
+
+    /**
+     * Render and write one mandala per seed, spreading them over the given number
+     * of threads, then print how long it took.
+     *
+     * @param seeds
+     * @param radius
+     * @param sections
+     * @param threads number of mandalas rendered at the same time
+     */
+    public void render(long[] seeds, int radius, int sections, int threads) {
+        int workers = Math.max(1, Math.min(threads, seeds.length));
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "Mandalas-Render");
+            t.setDaemon(true);
+
+            return t;
+        });
+
+        mLogger.info(String.format("Rendering %d mandala(s) of radius %d on %d thread(s) to %s.", seeds.length,
+                radius, workers, mFolder));
+        long start = System.nanoTime();
+
+        for (int w = 0; w < workers; w++) {
+            pool.execute(() -> {
+                int i;
+
+                while ((i = next.getAndIncrement()) < seeds.length) {
+                    render(new MandalaAttributes(seeds[i], radius, sections, 0));
+                    report(i + 1, seeds.length, start);
+                }
+            });
+        }
+
+        pool.shutdown();
+
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        ParallelRenderer.shutdown();
+        SymmetryTable.clearCache();
+        mLogger.info(getSummary(System.nanoTime() - start));
+    }
+
+    private void render(MandalaAttributes attr) {
+        try {
+            long start = System.nanoTime();
+            SpanRaster raster = new Mandala(mConfig, attr).getSpans();
+            long rendered = System.nanoTime();
+
+            write(attr, raster);
+            long written = System.nanoTime();
+
+            mRenderNanos.addAndGet(rendered - start);
+            mWriteNanos.addAndGet(written - rendered);
+            mSlowestNanos.accumulateAndGet(written - start, Math::max);
+            mPixels.addAndGet((long) raster.getWidth() * raster.getHeight());
+            mSpans.addAndGet(raster.getSpanCount());
+            mRendered.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            mFailed.incrementAndGet();
+            mLogger.warning(String.format("Could not render mandala with seed %d: %s", attr.seed, e));
+        }
+    }
+
+    private void write(MandalaAttributes attr, SpanRaster raster) throws IOException {
+        if (mCache != null) {
+            mCache.put(RasterCache.Key.of(attr, mFingerprint), raster);
+            return;
+        }
+
+        File file = new File(mFolder, String.format("%d_%d_%d.%s", attr.seed, attr.radius, attr.numberOfSections,
+                mFormat));
+
+        if (!mFolder.isDirectory() && !mFolder.mkdirs() && !mFolder.isDirectory()) {
+            throw new IOException("Could not create " + mFolder);
+        }
+
+        ImageExporter.write(raster, file, mFormat, mConfig.getExportCompression());
+        mImageBytes.addAndGet(file.length());
+    }
+
+    /**
+     * Print the progress roughly every tenth of the seeds.
+     */
+    private void report(int done, int total, long start) {
+        int step = Math.max(1, total / 10);
+
+        if (done % step == 0 && done < total) {
+            double seconds = (System.nanoTime() - start) / 1e9;
+            mLogger.info(String.format("%d/%d mandala(s), %.1f per second.", done, total, done / seconds));
+        }
+    }
+
+    /**
+     * Throughput of everything rendered so far.
+     *
+     * @param elapsedNanos wall clock time of the whole run
+     * @return a line of statistics.
+     */
+    public String getSummary(long elapsedNanos) {
+        long rendered = mRendered.get();
+        double seconds = Math.max(1, elapsedNanos) / 1e9;
+        long bytes = mCache != null ? mCache.getBytes() : mImageBytes.get();
+
+        return String.format(
+                "Rendered %d mandala(s) in %.2f s (%d failed): %.1f mandalas/s, %.1f Mpixels/s, %d spans. "
+                        + "Per mandala: %.1f ms rendering, %.1f ms writing, %.1f ms slowest. Output: %d KB.",
+                rendered, seconds, mFailed.get(), rendered / seconds, mPixels.get() / seconds / 1e6, mSpans.get(),
+                rendered == 0 ? 0 : mRenderNanos.get() / 1e6 / rendered,
+                rendered == 0 ? 0 : mWriteNanos.get() / 1e6 / rendered, mSlowestNanos.get() / 1e6, bytes / 1024);
+    }
+
+    public long getRenderedCount() {
+        return mRendered.get();
+    }
+
+    public long getFailedCount() {
+        return mFailed.get();
+    }
+
+    /**
+     * Parse a list of seeds separated by commas, where each item is either a seed
+     * or an inclusive range written as {@code from..to}.
+     *
+     * @param list
+     * @return the seeds, in the order given.
+     * @throws IllegalArgumentException if an item is not a number or a range.
+     */
+    public static long[] parseSeeds(String list) {
+        List<long[]> ranges = new ArrayList<>();
+        long count = 0;
+
+        for (String item : list.split(",")) {
+            item = item.trim();
+
+            if (item.isEmpty()) {
+                continue;
+            }
+
+            int sep = item.indexOf("..");
+            long from;
+            long to;
+
+            try {
+                from = Long.parseLong(item.substring(0, sep == -1 ? item.length() : sep).trim());
+                to = sep == -1 ? from : Long.parseLong(item.substring(sep + 2).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid seed " + item);
+            }
+
+            if (to < from) {
+                throw new IllegalArgumentException("Invalid seed range " + item);
+            }
+
+            long length = to - from + 1;
+
+            // a non positive length means the range overflowed
+            if (length <= 0 || count + length > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Too many seeds in " + list);
+            }
+
+            count += length;
+
+            ranges.add(new long[] { from, to });
+        }
+
+        long[] seeds = new long[(int) count];
+        int i = 0;
+
+        for (long[] range : ranges) {
+            for (long seed = range[0]; seed <= range[1]; seed++) {
+                seeds[i++] = seed;
+
+                // the last seed of a range may be Long.MAX_VALUE
+                if (seed == Long.MAX_VALUE) {
+                    break;
+                }
+            }
+        }
+
+        return seeds;
+    }
+}
@@ -0,0 +1,183 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+package com.wmorellato.mandalas.generation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import com.wmorellato.mandalas.raster.SpanRaster;
+
+/**
+ * Save images of mandalas on a thread of its own. Requests wait in a small
+ * queue; when it is full the image is dropped and counted instead of making
+ * the caller wait, so exporting never slows the generation down.
+ *
+ * The rasters are queued as spans and only turned into pixels right before
+ * being written, so a full queue holds little memory.
+ */
+public class ImageExporter {
+    // seconds to wait for the images still queued when the plugin is disabled
+    private static final long SHUTDOWN_TIMEOUT = 10;
+
+    final File mFolder;
+    final String mFormat;
+    final int mCompression;
+    final Logger mLogger;
+    private final ThreadPoolExecutor mWriter;
+    private final AtomicLong mWritten = new AtomicLong();
+    private final AtomicLong mDropped = new AtomicLong();
+
+    /**
+     * @param folder      where the images are written, created if needed
+     * @param format      "png" or "bmp"
+     * @param compression PNG compression level, from 0 (none) to 9 (smallest)
+     * @param queueSize   images waiting to be written at most
+     * @param logger
+     */
+    public ImageExporter(File folder, String format, int compression, int queueSize, Logger logger) {
+        mFolder = folder;
+        mFormat = format;
+        mCompression = Math.max(0, Math.min(9, compression));
+        mLogger = logger;
+        mWriter = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)), r -> {
+                    Thread t = new Thread(r, "Mandalas-Export");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+
+                    return t;
+                });
+    }
+
+    /**
+     * Queue an image to be written, or drop it if the queue is full.
+     *
+     * @param name   file name, without extension
+     * @param raster
+     * @return false if the image was dropped.
+     */
+    public boolean submit(String name, SpanRaster raster) {
+        try {
+            mWriter.execute(() -> write(name, raster));
+            return true;
+        } catch (RejectedExecutionException e) {
+            long dropped = mDropped.incrementAndGet();
+
+            if (dropped == 1 || dropped % 100 == 0) {
+                mLogger.warning(String.format("Export queue is full, %d image(s) dropped so far.", dropped));
+            }
+
+            return false;
+        }
+    }
+
+    private void write(String name, SpanRaster raster) {
+        File file = new File(mFolder, name + "." + mFormat);
+
+        try {
+            if (!mFolder.isDirectory() && !mFolder.mkdirs()) {
+                throw new IOException("Could not create " + mFolder);
+            }
+
+            write(raster, file, mFormat, mCompression);
+            mWritten.incrementAndGet();
+        } catch (IOException | RuntimeException e) {
+            mLogger.warning(String.format("Could not export %s: %s", file.getName(), e));
+        }
+    }
+
+    /**
+     * Write the image of a raster to a file, on the calling thread.
+     *
+     * @param raster
+     * @param file
+     * @param format      "png" or "bmp"
+     * @param compression PNG compression level, from 0 (none) to 9 (smallest)
+     * @throws IOException
+     */
+    public static void write(SpanRaster raster, File file, String format, int compression) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+
+        if (!writers.hasNext()) {
+            throw new IOException("No writer for format " + format);
+        }
+
+        ImageWriter writer = writers.next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+
+        // the PNG writer of older JREs has no compression setting
+        if (format.equals("png") && param.canWriteCompressed()) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(1f - compression / 9f);
+        }
+
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not replace " + file);
+        }
+
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(raster.toRaster().toImage(), null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Write the images still queued, waiting a few seconds at most, and stop the
+     * writer thread.
+     */
+    public void shutdown() {
+        mWriter.shutdown();
+
+        try {
+            if (!mWriter.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                mWriter.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            mWriter.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        mLogger.info(String.format("Exported %d image(s), %d dropped because the queue was full.", mWritten.get(),
+                mDropped.get()));
+    }
+
+    public long getWrittenCount() {
+        return mWritten.get();
+    }
+
+    public long getDroppedCount() {
+        return mDropped.get();
+    }
+}
@@ -0,0 +1,319 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+package com.wmorellato.mandalas.generation;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.wmorellato.mandalas.BlockMapper;
+import com.wmorellato.mandalas.MandalasPlugin;
+import com.wmorellato.mandalas.components.MandalaAttributes;
+import com.wmorellato.mandalas.exceptions.CenterNotDefinedException;
+import com.wmorellato.mandalas.exceptions.RadiusNotDefinedException;
+import com.wmorellato.mandalas.raster.SpanRaster;
+import com.wmorellato.mandalas.selection.RegionSelection;
+
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+
+/**
+ * Place a list of mandalas, one after the other, generating the next ones on
+ * the workers while the current one is being placed. Only a few mandalas are
+ * generated ahead of the placement, so a long batch does not hold every raster
+ * in memory, and entries with the same seed share a single raster.
+ *
+ * Every method runs on the main thread.
+ */
+public class MandalaBatch {
+    final MandalasPlugin mPlugin;
+    final Player mPlayer;
+    final List<Entry> mEntries;
+    final Material[] mMaterials;
+    final int mSections;
+    final int mLookahead;
+
+    // raster of each seed being generated or waiting to be placed
+    final HashMap<Long, CompletableFuture<SpanRaster>> mRasters = new HashMap<>();
+    // how many entries not submitted yet use each seed
+    final HashMap<Long, Integer> mUses = new HashMap<>();
+    final CompletableFuture<?>[] mGenerations;
+    int mNextToGenerate = 0;
+    int mNextToSubmit = 0;
+    int mFinished = 0;
+    long mStartTime;
+    // set when the placement of an entry is cancelled, nothing else is generated
+    // or placed after that
+    boolean mAborted = false;
+
+    /**
+     * @param plugin
+     * @param player    player notified of the progress
+     * @param entries   mandalas to place, in order
+     * @param materials palette shared by every mandala
+     * @param sections  number of sections of every mandala
+     */
+    public MandalaBatch(MandalasPlugin plugin, Player player, List<Entry> entries, Material[] materials,
+            int sections) {
+        mPlugin = plugin;
+        mPlayer = player;
+        mEntries = entries;
+        mMaterials = materials;
+        mSections = sections;
+        mLookahead = plugin.getConfigManager().getNumberOfWorkers() + 1;
+        mGenerations = new CompletableFuture<?>[entries.size()];
+
+        for (Entry e : entries) {
+            mUses.merge(e.mSeed, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Start generating the first mandalas.
+     */
+    public void start() {
+        mStartTime = System.currentTimeMillis();
+        generateAhead();
+    }
+
+    /**
+     * Generate the next entries, as long as there are not too many mandalas
+     * waiting to be placed.
+     */
+    private void generateAhead() {
+        while (!mAborted && mNextToGenerate < mEntries.size() && mNextToGenerate - mFinished < mLookahead) {
+            Entry e = mEntries.get(mNextToGenerate);
+            CompletableFuture<SpanRaster> raster = mRasters.computeIfAbsent(e.mSeed, seed -> mPlugin.getGenerator()
+                    .generate(new MandalaAttributes(seed, e.mRegion.getRadius(), mSections, mMaterials.length)));
+
+            mGenerations[mNextToGenerate++] = raster.whenCompleteAsync((r, error) -> submitReady(),
+                    mPlugin.getGenerator().mainThread());
+        }
+    }
+
+    /**
+     * Queue the mandalas already generated, in the order of the entries.
+     */
+    private void submitReady() {
+        while (!mAborted && mNextToSubmit < mNextToGenerate && mGenerations[mNextToSubmit].isDone()) {
+            Entry e = mEntries.get(mNextToSubmit++);
+            CompletableFuture<SpanRaster> raster = mRasters.get(e.mSeed);
+
+            if (mUses.merge(e.mSeed, -1, Integer::sum) == 0) {
+                mRasters.remove(e.mSeed);
+            }
+
+            if (raster.isCompletedExceptionally()) {
+                mPlugin.getLogger().warning(String.format("Could not generate mandala with seed %d.", e.mSeed));
+                notifyPlayer(String.format("%sCould not generate the mandala with seed %d.", ChatColor.RED, e.mSeed));
+                onFinished(e);
+                continue;
+            }
+
+            BlockMapper bm = new BlockMapper(e.mRegion, mMaterials, raster.join()) {
+                @Override
+                protected void onComplete() {
+                    super.onComplete();
+                    onFinished(e);
+                }
+
+                @Override
+                protected void onCancel() {
+                    super.onCancel();
+                    abort();
+                }
+            };
+
+            bm.skipUnchangedBlocks(mPlugin.getConfigManager().shouldSkipUnchangedBlocks());
+            bm.applyPhysics(mPlugin.getConfigManager().shouldApplyPhysics());
+
+            if (mPlayer != null) {
+                bm.recordUndo(mPlayer);
+            }
+
+            try {
+                // no owner, the batch reports the progress itself
+                bm.drawMandala(mPlugin.getPlacementScheduler(), mPlugin.getGenerator().workers(), null);
+                mPlugin.getGenerator().export(
+                        new MandalaAttributes(e.mSeed, e.mRegion.getRadius(), mSections, mMaterials.length),
+                        raster.join());
+            } catch (RadiusNotDefinedException | CenterNotDefinedException ex) {
+                onFinished(e);
+            } catch (RuntimeException ex) {
+                mPlugin.getLogger().warning(String.format("Could not place mandala with seed %d: %s", e.mSeed, ex));
+                notifyPlayer(String.format("%sCould not place the mandala with seed %d.", ChatColor.RED, e.mSeed));
+                onFinished(e);
+            }
+        }
+    }
+
+    /**
+     * Read the seeds of a batch: "random", a list separated by commas or a range
+     * written as first..last.
+     * 
+     * @param arg
+     * @param count number of mandalas in the batch
+     * @return the seeds, at least one.
+     * @throws NumberFormatException if a seed is not a number
+     */
+    public static long[] parseSeeds(String arg, int count) {
+        if (arg.equalsIgnoreCase("random")) {
+            long[] seeds = new long[count];
+
+            for (int i = 0; i < count; i++) {
+                seeds[i] = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+            }
+
+            return seeds;
+        }
+
+        int range = arg.indexOf("..");
+
+        if (range > 0) {
+            long first = Long.parseLong(arg.substring(0, range));
+            long last = Long.parseLong(arg.substring(range + 2));
+
+            if (last < first) {
+                throw new NumberFormatException();
+            }
+
+            // the difference overflows for ranges longer than Long.MAX_VALUE
+            long span = last - first;
+            long[] seeds = new long[span < 0 || span >= count ? count : (int) span + 1];
+
+            for (int i = 0; i < seeds.length; i++) {
+                seeds[i] = first + i;
+            }
+
+            return seeds;
+        }
+
+        String[] parts = arg.split(",");
+
+        if (parts.length == 0) {
+            throw new NumberFormatException("No seed in \"" + arg + "\"");
+        }
+
+        long[] seeds = new long[parts.length];
+
+        for (int i = 0; i < parts.length; i++) {
+            seeds[i] = Long.parseLong(parts[i].trim());
+        }
+
+        return seeds;
+    }
+
+    /**
+     * Seed of a mandala of a batch. Seeds are used in order and start over if
+     * there are fewer seeds than mandalas.
+     *
+     * @param seeds seeds read by {@link #parseSeeds(String, int)}
+     * @param index index of the mandala in the batch
+     * @return the seed of the mandala.
+     */
+    public static long seedOf(long[] seeds, int index) {
+        return seeds[index % seeds.length];
+    }
+
+    /**
+     * Position of a mandala of a grid, relative to the first one. Mandalas are
+     * placed row by row, and a new column or row is further along its axis:
+     * <ul>
+     * <li>XZ: the columns go along x and the rows along z.</li>
+     * <li>XY: the columns go along x and the rows up along y.</li>
+     * <li>YZ: the columns go along z and the rows up along y.</li>
+     * </ul>
+     *
+     * @param index   index of the mandala in the batch
+     * @param cols    number of columns of the grid
+     * @param spacing distance between the centers of two mandalas
+     * @param plane   plane of the mandalas
+     * @return the offsets along x, y and z.
+     */
+    public static int[] gridOffset(int index, int cols, int spacing, RegionSelection.Plane plane) {
+        int col = (index % cols) * spacing;
+        int row = (index / cols) * spacing;
+
+        switch (plane) {
+            case XY:
+                return new int[] { col, row, 0 };
+            case YZ:
+                return new int[] { 0, row, col };
+            case XZ:
+            default:
+                return new int[] { col, 0, row };
+        }
+    }
+
+    /**
+     * Stop the batch when one of its placements is cancelled, which only happens
+     * when the plugin is disabled. The remaining entries are dropped and no new
+     * mandala is generated.
+     */
+    private void abort() {
+        if (mAborted) {
+            return;
+        }
+
+        mAborted = true;
+        mRasters.clear();
+        notifyPlayer(String.format("%sBatch cancelled after %d/%d mandalas.", ChatColor.RED, mFinished,
+                mEntries.size()));
+    }
+
+    private void onFinished(Entry e) {
+        mFinished++;
+
+        if (mFinished == mEntries.size()) {
+            notifyPlayer(String.format("%sBatch finished: %d mandalas in %.1fs.", ChatColor.DARK_PURPLE,
+                    mEntries.size(), (System.currentTimeMillis() - mStartTime) / 1000.0));
+            return;
+        }
+
+        notifyPlayer(String.format("%sMandala %d/%d placed (seed %d).", ChatColor.DARK_PURPLE, mFinished,
+                mEntries.size(), e.mSeed));
+        generateAhead();
+    }
+
+    private void notifyPlayer(String message) {
+        if (mPlayer != null && mPlayer.isOnline()) {
+            mPlayer.sendMessage(message);
+        }
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Seed and region of one mandala of a batch.
+     */
+    public static class Entry {
+        final long mSeed;
+        final RegionSelection mRegion;
+
+        public Entry(long seed, RegionSelection region) {
+            mSeed = seed;
+            mRegion = region;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+package com.wmorellato.mandalas.generation;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.wmorellato.mandalas.MandalasPlugin;
+import com.wmorellato.mandalas.components.Mandala;
+import com.wmorellato.mandalas.components.MandalaAttributes;
+import com.wmorellato.mandalas.drawing.ParallelRenderer;
+import com.wmorellato.mandalas.drawing.SymmetryTable;
+import com.wmorellato.mandalas.raster.SpanRaster;
+
+/**
+ * Generate mandalas on worker threads. Creating the elements and composing the
+ * image is the heavy part of a mandala, so it never runs on the server thread.
+ * Only the resulting spans are handed back to the main thread, where the
+ * blocks are placed.
+ */
+public class MandalaGenerator {
+    private final MandalasPlugin mPlugin;
+    private final ExecutorService mWorkers;
+    private final Executor mMainThread;
+    private final RasterCache mCache;
+    private final DiskRasterCache mDiskCache;
+    private final ImageExporter mExporter;
+
+    public MandalaGenerator(MandalasPlugin plugin) {
+        mPlugin = plugin;
+        mCache = new RasterCache(plugin.getConfigManager().getRasterCacheSize());
+        long diskCacheSize = plugin.getConfigManager().getDiskCacheSize();
+        mDiskCache = diskCacheSize > 0
+                ? new DiskRasterCache(new File(plugin.getDataFolder(), "cache"), diskCacheSize, plugin.getLogger())
+                : null;
+        mExporter = plugin.getConfigManager().shouldSaveToFile()
+                ? new ImageExporter(new File(plugin.getDataFolder(), plugin.getConfigManager().getExportFolder()),
+                        plugin.getConfigManager().getExportFormat(), plugin.getConfigManager().getExportCompression(),
+                        plugin.getConfigManager().getExportQueueSize(), plugin.getLogger())
+                : null;
+        mWorkers = Executors.newFixedThreadPool(plugin.getConfigManager().getNumberOfWorkers(),
+                new WorkerThreadFactory());
+        mMainThread = new MainThreadExecutor();
+    }
+
+    /**
+     * Generate a mandala on a worker thread. Mandalas generated before with the
+     * same seed, radius, sections and configuration are taken from the memory
+     * cache or, failing that, read from the disk cache.
+     *
+     * @param attr attributes of the mandala
+     * @return a future holding the spans of the mandala, already analysed.
+     */
+    public CompletableFuture<SpanRaster> generate(MandalaAttributes attr) {
+        RasterCache.Key key = RasterCache.Key.of(attr, mPlugin.getConfigManager().getGenerationFingerprint());
+        SpanRaster cached = mCache.get(key);
+
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            SpanRaster raster = mDiskCache != null ? mDiskCache.get(key) : null;
+
+            if (raster == null) {
+                raster = render(attr);
+
+                if (mDiskCache != null) {
+                    mDiskCache.put(key, raster);
+                }
+            }
+
+            raster.getStats();
+            mCache.put(key, raster);
+
+            return raster;
+        }, mWorkers);
+    }
+
+    /**
+     * Generate a mandala on the calling thread, without looking at the caches.
+     * The mandala is not exported, see {@link #export(MandalaAttributes, SpanRaster)}.
+     *
+     * @param attr attributes of the mandala
+     * @return the spans of the mandala, already analysed.
+     */
+    public SpanRaster render(MandalaAttributes attr) {
+        return render(attr, mPlugin.getConfigManager().getNumberOfRenderThreads());
+    }
+
+    /**
+     * Generate a mandala on the calling thread, without looking at the caches,
+     * painting it on at most the given number of threads.
+     *
+     * @param attr    attributes of the mandala
+     * @param threads maximum number of threads, 1 paints everything on the
+     *                calling thread
+     * @return the spans of the mandala, already analysed.
+     */
+    public SpanRaster render(MandalaAttributes attr, int threads) {
+        SpanRaster raster = new Mandala(mPlugin.getConfigManager(), attr, threads).getSpans();
+        raster.getStats();
+
+        return raster;
+    }
+
+    /**
+     * Save the image of a mandala, if exporting is enabled. Called when a mandala
+     * is placed, so the mandalas generated in advance or only previewed are not
+     * exported.
+     *
+     * @param attr   attributes of the mandala
+     * @param raster
+     */
+    public void export(MandalaAttributes attr, SpanRaster raster) {
+        // tiled mandalas are too big to be turned into a single image
+        if (mExporter != null && attr.radius <= mPlugin.getConfigManager().getTiledRenderingRadius()) {
+            mExporter.submit(String.format("%d_%d_%d", attr.seed, attr.radius, attr.numberOfSections), raster);
+        }
+    }
+
+    /**
+     * Add a mandala generated elsewhere to the caches, so it can be drawn again
+     * with its seed without being generated.
+     *
+     * @param attr        attributes of the mandala
+     * @param raster
+     * @param fingerprint configuration the mandala was generated with
+     */
+    public void remember(MandalaAttributes attr, SpanRaster raster, String fingerprint) {
+        RasterCache.Key key = RasterCache.Key.of(attr, fingerprint);
+        mCache.put(key, raster);
+
+        if (mDiskCache != null) {
+            mWorkers.execute(() -> mDiskCache.put(key, raster));
+        }
+    }
+
+    public RasterCache getCache() {
+        return mCache;
+    }
+
+    /**
+     * Executor that runs tasks on the server thread. Use it to continue the
+     * futures returned by {@link #generate(MandalaAttributes)} with code that
+     * touches the world.
+     *
+     * @return an {@link Executor} backed by the Bukkit scheduler.
+     */
+    public Executor mainThread() {
+        return mMainThread;
+    }
+
+    /**
+     * Executor running on the worker threads, for other background work related
+     * to mandalas.
+     *
+     * @return the {@link Executor} of the workers.
+     */
+    public Executor workers() {
+        return mWorkers;
+    }
+
+    /**
+     * Stop the workers, dropping the mandalas not generated yet.
+     */
+    public void shutdown() {
+        mWorkers.shutdownNow();
+        ParallelRenderer.shutdown();
+        SymmetryTable.clearCache();
+
+        if (mExporter != null) {
+            mExporter.shutdown();
+        }
+
+        mPlugin.getLogger().info(String.format("Raster cache: %s.", mCache));
+        mCache.clear();
+    }
+
+    /**
+     * Hand tasks to the Bukkit scheduler, unless the plugin was disabled in the
+     * meantime.
+     */
+    private class MainThreadExecutor implements Executor {
+        @Override
+        public void execute(Runnable command) {
+            if (mPlugin.isEnabled()) {
+                mPlugin.getServer().getScheduler().runTask(mPlugin, command);
+            }
+        }
+    }
+
+    /**
+     * Name the worker threads and make sure they never keep the server alive.
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Mandalas-Worker-" + mCount.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+
+            return t;
+        }
+    }
+}
@@ -0,0 +1,363 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+package com.wmorellato.mandalas.generation;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+import com.wmorellato.mandalas.MandalasPlugin;
+import com.wmorellato.mandalas.components.MandalaAttributes;
+import com.wmorellato.mandalas.config.ConfigurationManager;
+import com.wmorellato.mandalas.raster.SpanRaster;
+
+import org.bukkit.scheduler.BukkitRunnable;
+
+/**
+ * Keep a few mandalas with random seeds ready for the sizes players use, so
+ * /mandala can place one right away instead of waiting for it to be generated.
+ *
+ * Every few seconds, if no mandala is being placed and the server is keeping
+ * up, the pools that are not full are refilled by low priority threads of
+ * their own, each painting one mandala on a single thread. A mandala whose
+ * turn comes after the server got busy is not generated. A size is pooled
+ * once a player asks for it (or if it is listed in the config), and the sizes
+ * not asked for in a while are forgotten first.
+ *
+ * The memory of a mandala is reserved when it starts being generated, guessed
+ * from the biggest one generated for its size so far, so the pools never go
+ * over their limit; until that size is known, the mandalas of a size are
+ * generated one at a time.
+ */
+public class PregenerationPool extends BukkitRunnable {
+    // ticks between two checks of the pools
+    private static final long CHECK_PERIOD = 40;
+    // the server is idle if its last tick took less than this
+    private static final double IDLE_TICK_MILLIS = 52.0;
+    // how many sizes are remembered at most
+    private static final int MAX_SIZES = 8;
+
+    /**
+     * Generates the spans of a mandala on the calling thread.
+     */
+    public interface Renderer {
+        SpanRaster render(MandalaAttributes attr);
+    }
+
+    final MandalasPlugin mPlugin;
+    private final ConfigurationManager mConfig;
+    private final Renderer mRenderer;
+    private final BooleanSupplier mIdleCheck;
+    private final Logger mLogger;
+    private final ExecutorService mWorkers;
+    private final int mWorkerCount;
+    private final int mPerSize;
+    private final long mMaxBytes;
+    // pools by size, least recently asked for first
+    private final LinkedHashMap<Long, Pool> mPools = new LinkedHashMap<>(16, 0.75f, true);
+    // bytes of the ready mandalas and of those being generated
+    private long mBytes = 0;
+    private int mPending = 0;
+    // set by the periodic check, read by the workers
+    private volatile boolean mIdle = false;
+
+    public PregenerationPool(MandalasPlugin plugin) {
+        this(plugin, plugin.getConfigManager(), attr -> plugin.getGenerator().render(attr, 1),
+                () -> plugin.getPlacementScheduler().isIdle()
+                        && plugin.getPlacementScheduler().getLastTickMillis() <= IDLE_TICK_MILLIS,
+                plugin.getLogger());
+    }
+
+    /**
+     * @param plugin    plugin scheduling the periodic check, only needed by
+     *                  {@link #start()}
+     * @param config
+     * @param renderer  generates the mandalas, on the threads of the pool
+     * @param idleCheck tells if the server is idle, called on the main thread
+     * @param logger    where failures to generate are reported
+     */
+    public PregenerationPool(MandalasPlugin plugin, ConfigurationManager config, Renderer renderer,
+            BooleanSupplier idleCheck, Logger logger) {
+        mPlugin = plugin;
+        mConfig = config;
+        mRenderer = renderer;
+        mIdleCheck = idleCheck;
+        mLogger = logger;
+        mPerSize = config.getPregeneratedPerSize();
+        mMaxBytes = config.getPregenerationMemory();
+        mWorkerCount = config.getNumberOfPregenerationWorkers();
+        mWorkers = Executors.newFixedThreadPool(mWorkerCount, new PoolThreadFactory());
+
+        for (int radius : config.getPregeneratedRadii()) {
+            pool(radius, config.getNumberOfSections());
+        }
+    }
+
+    /**
+     * Start checking the pools periodically.
+     */
+    public void start() {
+        if (mPerSize > 0) {
+            runTaskTimer(mPlugin, CHECK_PERIOD, CHECK_PERIOD);
+        }
+    }
+
+    /**
+     * Take a ready mandala of the given size. The size is remembered, so the pool
+     * has one ready next time even if it is empty now. Must be called on the main
+     * thread.
+     *
+     * @param radius
+     * @param sections
+     * @return a {@link Pregenerated} mandala, or null if none is ready.
+     */
+    public synchronized Pregenerated take(int radius, int sections) {
+        if (mPerSize <= 0) {
+            return null;
+        }
+
+        Pool pool = pool(radius, sections);
+        String fingerprint = mConfig.getGenerationFingerprint();
+        Pregenerated mandala;
+
+        while ((mandala = pool.mReady.poll()) != null) {
+            mBytes -= mandala.mRaster.getByteSize();
+
+            // drop mandalas generated before the config was changed
+            if (mandala.mFingerprint.equals(fingerprint)) {
+                return mandala;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public void run() {
+        mIdle = mIdleCheck.getAsBoolean();
+
+        if (mIdle) {
+            refill();
+        }
+    }
+
+    private synchronized void refill() {
+        String fingerprint = mConfig.getGenerationFingerprint();
+
+        for (Pool pool : mPools.values()) {
+            while (mPending < mWorkerCount && pool.mReady.size() + pool.mPending < mPerSize) {
+                // one at a time until the size of these mandalas is known
+                if (pool.mExpectedBytes == 0 ? pool.mPending > 0 || mBytes >= mMaxBytes
+                        : mBytes + pool.mExpectedBytes > mMaxBytes) {
+                    break;
+                }
+
+                MandalaAttributes attr = new MandalaAttributes(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE),
+                        pool.mRadius, pool.mSections, 0);
+                long reserved = pool.mExpectedBytes;
+
+                pool.mPending++;
+                pool.mReserved += reserved;
+                mPending++;
+                mBytes += reserved;
+                mWorkers.execute(() -> generate(pool, attr, fingerprint, reserved));
+            }
+        }
+    }
+
+    private void generate(Pool pool, MandalaAttributes attr, String fingerprint, long reserved) {
+        SpanRaster raster = null;
+
+        try {
+            // skipped if the server got busy since this mandala was asked for
+            if (mIdle) {
+                raster = mRenderer.render(attr);
+            }
+        } catch (RuntimeException e) {
+            mLogger.warning(String.format("Could not pregenerate mandala (%s): %s", attr, e));
+        }
+
+        synchronized (this) {
+            pool.mPending--;
+            mPending--;
+
+            // the size may have been forgotten in the meantime, with its reservations
+            if (!mPools.containsValue(pool)) {
+                return;
+            }
+
+            pool.mReserved -= reserved;
+            mBytes -= reserved;
+
+            if (raster != null) {
+                pool.mReady.add(new Pregenerated(attr.seed, raster, fingerprint));
+                pool.mExpectedBytes = Math.max(pool.mExpectedBytes, raster.getByteSize());
+                mBytes += raster.getByteSize();
+            }
+        }
+    }
+
+    private Pool pool(int radius, int sections) {
+        long key = (long) radius << 32 | sections;
+        Pool pool = mPools.get(key);
+
+        if (pool == null) {
+            pool = new Pool(radius, sections);
+            mPools.put(key, pool);
+
+            Iterator<Map.Entry<Long, Pool>> it = mPools.entrySet().iterator();
+
+            while (mPools.size() > MAX_SIZES) {
+                Pool forgotten = it.next().getValue();
+
+                for (Pregenerated mandala : forgotten.mReady) {
+                    mBytes -= mandala.mRaster.getByteSize();
+                }
+
+                mBytes -= forgotten.mReserved;
+                it.remove();
+            }
+        }
+
+        return pool;
+    }
+
+    /**
+     * Number of mandalas ready to be taken.
+     *
+     * @return the number of mandalas in every pool.
+     */
+    public synchronized int size() {
+        int size = 0;
+
+        for (Pool pool : mPools.values()) {
+            size += pool.mReady.size();
+        }
+
+        return size;
+    }
+
+    /**
+     * Number of mandalas being generated.
+     *
+     * @return the number of mandalas given to the threads of the pools and not
+     *         done yet.
+     */
+    public synchronized int getPending() {
+        return mPending;
+    }
+
+    /**
+     * Memory taken by the pools, counting the mandalas being generated.
+     *
+     * @return the size of the mandalas ready and the size reserved for those
+     *         being generated, in bytes.
+     */
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * Stop refilling the pools and drop the mandalas not taken. Called when the
+     * plugin is disabled.
+     */
+    public synchronized void shutdown() {
+        mWorkers.shutdownNow();
+        mPools.clear();
+        mBytes = 0;
+
+        try {
+            cancel();
+        } catch (IllegalStateException e) {
+            // the task was never scheduled
+        }
+    }
+
+    /**
+     * A mandala ready to be placed.
+     */
+    public static class Pregenerated {
+        final long mSeed;
+        final SpanRaster mRaster;
+        final String mFingerprint;
+
+        Pregenerated(long seed, SpanRaster raster, String fingerprint) {
+            mSeed = seed;
+            mRaster = raster;
+            mFingerprint = fingerprint;
+        }
+
+        public long getSeed() {
+            return mSeed;
+        }
+
+        public SpanRaster getRaster() {
+            return mRaster;
+        }
+
+        public String getFingerprint() {
+            return mFingerprint;
+        }
+    }
+
+    /**
+     * Mandalas ready for one size, and how many are being generated.
+     */
+    private static class Pool {
+        final int mRadius;
+        final int mSections;
+        final ArrayDeque<Pregenerated> mReady = new ArrayDeque<>();
+        int mPending = 0;
+        // bytes reserved for the mandalas being generated
+        long mReserved = 0;
+        // biggest mandala generated for this size, 0 until one is done
+        long mExpectedBytes = 0;
+
+        Pool(int radius, int sections) {
+            mRadius = radius;
+            mSections = sections;
+        }
+    }
+
+    /**
+     * The pools are refilled by daemon threads with the lowest priority, so they
+     * only get the processor when nothing else wants it.
+     */
+    private static class PoolThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Mandalas-Pregen-" + mCount.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+
+            return t;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+package com.wmorellato.mandalas.generation;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.wmorellato.mandalas.components.MandalaAttributes;
+import com.wmorellato.mandalas.raster.SpanRaster;
+
+/**
+ * Keep the most recently used rasters in memory, so drawing a seed again with
+ * other materials does not generate it again. The cache is bounded by the
+ * memory taken by the rasters, and the least recently used ones are dropped
+ * first. It can be used from any thread.
+ */
+public class RasterCache {
+    private final long mMaxBytes;
+    // iteration order is the access order, least recent first
+    private final LinkedHashMap<Key, SpanRaster> mRasters = new LinkedHashMap<>(16, 0.75f, true);
+    private long mBytes = 0;
+    private long mHits = 0;
+    private long mMisses = 0;
+    private long mEvictions = 0;
+
+    /**
+     * @param maxBytes memory the rasters may take, in bytes. 0 disables the cache
+     */
+    public RasterCache(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Get a raster, counting the hit or the miss.
+     *
+     * @param key
+     * @return the cached {@link SpanRaster}, or null if it is not in the cache.
+     */
+    public synchronized SpanRaster get(Key key) {
+        SpanRaster raster = mRasters.get(key);
+
+        if (raster == null) {
+            mMisses++;
+        } else {
+            mHits++;
+        }
+
+        return raster;
+    }
+
+    /**
+     * Add a raster, dropping the least recently used ones until the cache fits in
+     * its memory limit again. Rasters bigger than the whole cache are not kept.
+     *
+     * @param key
+     * @param raster
+     */
+    public synchronized void put(Key key, SpanRaster raster) {
+        if (raster.getByteSize() > mMaxBytes) {
+            return;
+        }
+
+        SpanRaster old = mRasters.put(key, raster);
+
+        if (old != null) {
+            mBytes -= old.getByteSize();
+        }
+
+        mBytes += raster.getByteSize();
+
+        Iterator<Map.Entry<Key, SpanRaster>> it = mRasters.entrySet().iterator();
+
+        while (mBytes > mMaxBytes && it.hasNext()) {
+            mBytes -= it.next().getValue().getByteSize();
+            mEvictions++;
+            it.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        mRasters.clear();
+        mBytes = 0;
+    }
+
+    public synchronized int size() {
+        return mRasters.size();
+    }
+
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    public synchronized long getEvictions() {
+        return mEvictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d rasters, %d KiB, %d hits, %d misses, %d evictions", mRasters.size(), mBytes / 1024,
+                mHits, mMisses, mEvictions);
+    }
+
+    /**
+     * Everything the raster of a mandala depends on: the seed, the size, the
+     * number of sections and the configuration of the elements. The materials
+     * are not part of it, since they are only applied when placing the blocks.
+     */
+    public static final class Key {
+        final long mSeed;
+        final int mRadius;
+        final int mSections;
+        final String mFingerprint;
+
+        public Key(long seed, int radius, int sections, String fingerprint) {
+            mSeed = seed;
+            mRadius = radius;
+            mSections = sections;
+            mFingerprint = fingerprint;
+        }
+
+        /**
+         * @param attr        attributes of the mandala
+         * @param fingerprint summary of the configuration used to generate it
+         * @return the key of the mandala.
+         */
+        public static Key of(MandalaAttributes attr, String fingerprint) {
+            return new Key(attr.seed, attr.radius, attr.numberOfSections, fingerprint);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key k = (Key) o;
+
+            return mSeed == k.mSeed && mRadius == k.mRadius && mSections == k.mSections
+                    && mFingerprint.equals(k.mFingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = Long.hashCode(mSeed);
+            h = h * 31 + mRadius;
+            h = h * 31 + mSections;
+
+            return h * 31 + mFingerprint.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d:%d:%d:%s", mSeed, mRadius, mSections, mFingerprint);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+package com.wmorellato.mandalas.placement;
+
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Load the chunks of a region a few at a time and keep them loaded with plugin
+ * chunk tickets until {@link #release()} is called, so the server does not
+ * unload them in the middle of a placement.
+ *
+ * Chunks are visited in a serpentine order (along z, then back along the next
+ * x), and {@link #slotOf(int, int)} gives the position of a chunk in that
+ * order, which is also the order the blocks should be placed in.
+ */
+public class ChunkPreloader {
+    final Plugin mPlugin;
+    final World mWorld;
+    final int mMinChunkX;
+    final int mMinChunkZ;
+    final int mChunksX;
+    final int mChunksZ;
+    int mLoaded = 0;
+    // copy of the chunks loaded so far, if requested
+    RegionSnapshot mSnapshot;
+
+    /**
+     * @param plugin plugin owning the chunk tickets
+     * @param world
+     * @param minX   smallest block x, inclusive
+     * @param minZ   smallest block z, inclusive
+     * @param maxX   largest block x, inclusive
+     * @param maxZ   largest block z, inclusive
+     */
+    public ChunkPreloader(Plugin plugin, World world, int minX, int minZ, int maxX, int maxZ) {
+        mPlugin = plugin;
+        mWorld = world;
+        mMinChunkX = minX >> 4;
+        mMinChunkZ = minZ >> 4;
+        mChunksX = (maxX >> 4) - mMinChunkX + 1;
+        mChunksZ = (maxZ >> 4) - mMinChunkZ + 1;
+    }
+
+    /**
+     * Also copy the blocks of a square region from each chunk right after it is
+     * loaded, so the copy of a big region is spread over as many ticks as its
+     * loading. Must be called before the first {@link #loadNext(int)}.
+     *
+     * @param first   block at row 0, column 0
+     * @param rowStep offset, in blocks, of one step along a row
+     * @param colStep offset, in blocks, of one step along a column
+     * @param size    number of rows and columns
+     */
+    public void takeSnapshots(Block first, int[] rowStep, int[] colStep, int size) {
+        mSnapshot = new RegionSnapshot(mMinChunkX, mMinChunkZ, mWorld.getMaxHeight(), first, rowStep, colStep, size);
+    }
+
+    /**
+     * Load and hold the next chunks, copying them if requested. Must be called on
+     * the main thread.
+     *
+     * @param count maximum number of chunks to load now
+     * @return true if every chunk of the region is loaded.
+     */
+    public boolean loadNext(int count) {
+        int end = Math.min(getChunkCount(), mLoaded + count);
+
+        while (mLoaded < end) {
+            int i = mLoaded / mChunksZ;
+            int j = mLoaded % mChunksZ;
+
+            if (i % 2 == 1) {
+                j = mChunksZ - 1 - j;
+            }
+
+            // the ticket loads the chunk if needed
+            mWorld.addPluginChunkTicket(mMinChunkX + i, mMinChunkZ + j, mPlugin);
+
+            if (mSnapshot != null) {
+                mSnapshot.capture(mWorld, i, j);
+            }
+
+            mLoaded++;
+        }
+
+        return mLoaded == getChunkCount();
+    }
+
+    /**
+     * Remove the tickets of every chunk loaded so far, letting the server unload
+     * them again.
+     */
+    public void release() {
+        for (int k = 0; k < mLoaded; k++) {
+            int i = k / mChunksZ;
+            int j = k % mChunksZ;
+
+            if (i % 2 == 1) {
+                j = mChunksZ - 1 - j;
+            }
+
+            mWorld.removePluginChunkTicket(mMinChunkX + i, mMinChunkZ + j, mPlugin);
+        }
+
+        mLoaded = 0;
+    }
+
+    /**
+     * Position, in the loading order, of the chunk holding a block.
+     *
+     * @param x block x
+     * @param z block z
+     * @return a number between 0 and {@link #getChunkCount()} - 1.
+     */
+    public int slotOf(int x, int z) {
+        int i = (x >> 4) - mMinChunkX;
+        int j = (z >> 4) - mMinChunkZ;
+
+        if (i % 2 == 1) {
+            j = mChunksZ - 1 - j;
+        }
+
+        return i * mChunksZ + j;
+    }
+
+    /**
+     * Copy of the region, complete once {@link #loadNext(int)} returned true.
+     *
+     * @return the {@link RegionSnapshot}, or null if
+     *         {@link #takeSnapshots(Block, int[], int[], int)} was not called.
+     */
+    public RegionSnapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    public int getChunkCount() {
+        return mChunksX * mChunksZ;
+    }
+
+    public World getWorld() {
+        return mWorld;
+    }
+}
@@ -0,0 +1,156 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+package com.wmorellato.mandalas.placement;
+
+import com.wmorellato.mandalas.MandalasPlugin;
+
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+
+/**
+ * A unit of work that writes blocks into the world a few at a time. Jobs are
+ * drained by the {@link PlacementScheduler}, which calls {@link #placeNext()}
+ * until the time budget of the current tick runs out, so a job must be able to
+ * stop after any block and resume on the next tick.
+ */
+public abstract class PlacementJob {
+    PlacementScheduler mScheduler;
+    Player mOwner;
+    boolean mPrepared = false;
+    long mPlacedBlocks = 0;
+    long mStartTime = 0;
+    int mTicks = 0;
+    // time spent in placeNext, measured by the scheduler
+    long mPlacingNanos = 0;
+
+    /**
+     * Check if there are still blocks to be placed by this job.
+     *
+     * @return true if {@link #placeNext()} should be called again.
+     */
+    public abstract boolean hasNext();
+
+    /**
+     * Place the next block of this job in the world.
+     */
+    public abstract void placeNext();
+
+    /**
+     * Called on the main thread when the job reaches the front of the queue,
+     * before the first block is placed.
+     */
+    protected void onStart() {
+    }
+
+    /**
+     * Called on the main thread once per tick, starting on the tick the job
+     * reaches the front of the queue, until it returns true. Jobs that need to
+     * load chunks or wait for some work done in the background do it here, a
+     * little at a time. No block is placed before it returns true, and the
+     * scheduler waits without placing anything else.
+     *
+     * @return true if {@link #placeNext()} can be called.
+     */
+    protected boolean prepare() {
+        return true;
+    }
+
+    /**
+     * Called on the main thread if the job is dropped before it is finished,
+     * for instance when the plugin is disabled or when the job threw an
+     * exception. Jobs still waiting in the queue are cancelled too, so this may
+     * be called without {@link #onStart()} or {@link #prepare()} ever being
+     * called.
+     */
+    protected void onCancel() {
+    }
+
+    /**
+     * Called on the main thread after the last block was placed. By default it
+     * reports the elapsed time to the owner of the job.
+     */
+    protected void onComplete() {
+        double seconds = (System.currentTimeMillis() - mStartTime) / 1000.0;
+        notifyOwner(String.format("%s%s finished: %d blocks in %.1fs (%d ticks).", ChatColor.DARK_PURPLE,
+                getDescription(), mPlacedBlocks, seconds, mTicks));
+    }
+
+    /**
+     * Send a message to the owner of the job, if there is one and it is online.
+     *
+     * @param message
+     */
+    protected void notifyOwner(String message) {
+        if (mOwner != null && mOwner.isOnline()) {
+            mOwner.sendMessage(message);
+        }
+    }
+
+    /**
+     * Short name of the job, used in the messages sent to the owner.
+     *
+     * @return a description of what this job is placing.
+     */
+    public String getDescription() {
+        return "Placement";
+    }
+
+    /**
+     * Set the player that requested this job. The player will be notified when the
+     * job is done.
+     *
+     * @param owner
+     */
+    public void setOwner(Player owner) {
+        mOwner = owner;
+    }
+
+    public Player getOwner() {
+        return mOwner;
+    }
+
+    /**
+     * Get the plugin running this job. Only available after the job was
+     * submitted.
+     *
+     * @return the plugin instance.
+     */
+    protected MandalasPlugin getPlugin() {
+        return mScheduler.mPlugin;
+    }
+
+    /**
+     * Get the number of blocks placed so far.
+     *
+     * @return number of blocks placed by this job.
+     */
+    public long getPlacedBlocks() {
+        return mPlacedBlocks;
+    }
+
+    /**
+     * Get the time spent placing the blocks of this job, without the time spent
+     * waiting for the next tick or preparing.
+     *
+     * @return the time in milliseconds.
+     */
+    public double getPlacingMillis() {
+        return mPlacingNanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,240 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+package com.wmorellato.mandalas.placement;
+
+import java.util.ArrayDeque;
+
+import com.wmorellato.mandalas.MandalasPlugin;
+
+import org.bukkit.ChatColor;
+import org.bukkit.scheduler.BukkitRunnable;
+
+/**
+ * Repeating task that drains the queued {@link PlacementJob}s a few blocks per
+ * tick. Each tick it spends at most the current budget (in milliseconds)
+ * placing blocks. The budget grows slowly while the server keeps up with 20
+ * ticks per second and is cut in half as soon as a tick takes longer than
+ * expected.
+ */
+public class PlacementScheduler extends BukkitRunnable {
+    // a healthy server runs one tick every 50ms
+    private static final long TICK_NANOS = 50_000_000L;
+    // ticks longer than this mean the server is falling behind
+    private static final long LAGGING_TICK_NANOS = 55_000_000L;
+    // how many blocks are placed between two reads of the clock
+    private static final int BLOCKS_PER_CHECK = 32;
+    private static final double BUDGET_STEP = 1.0;
+
+    final MandalasPlugin mPlugin;
+    private final ArrayDeque<PlacementJob> mQueue = new ArrayDeque<>();
+    private PlacementJob mCurrentJob;
+
+    private final double mMinBudget;
+    private final double mMaxBudget;
+    private double mBudget;
+    private long mLastRun = 0;
+    private long mLastTickNanos = TICK_NANOS;
+
+    public PlacementScheduler(MandalasPlugin plugin) {
+        mPlugin = plugin;
+        mMinBudget = plugin.getConfigManager().getMinTickBudget();
+        mMaxBudget = Math.max(mMinBudget, plugin.getConfigManager().getMaxTickBudget());
+        mBudget = mMaxBudget;
+    }
+
+    /**
+     * Start draining jobs, once every tick.
+     */
+    public void start() {
+        runTaskTimer(mPlugin, 1, 1);
+    }
+
+    /**
+     * Queue a job to be placed. Jobs are placed one at a time in the order they
+     * were submitted.
+     *
+     * @param job
+     */
+    public void submit(PlacementJob job) {
+        job.mScheduler = this;
+        mQueue.add(job);
+
+        if (mCurrentJob != null && job.getOwner() != null) {
+            job.getOwner().sendMessage(String.format("%sQueued behind %d other job(s).", ChatColor.DARK_PURPLE,
+                    mQueue.size()));
+        }
+    }
+
+    @Override
+    public void run() {
+        long now = System.nanoTime();
+
+        if (mLastRun != 0) {
+            adaptBudget(now - mLastRun);
+        }
+
+        mLastRun = now;
+
+        if (mCurrentJob == null && !nextJob()) {
+            return;
+        }
+
+        long deadline = now + (long) (mBudget * 1_000_000L);
+        mCurrentJob.mTicks++;
+
+        while (mCurrentJob != null) {
+            try {
+                // prepare() runs at most once per tick for each job
+                if (!mCurrentJob.mPrepared && !(mCurrentJob.mPrepared = mCurrentJob.prepare())) {
+                    break;
+                }
+
+                long start = System.nanoTime();
+
+                for (int i = 0; i < BLOCKS_PER_CHECK && mCurrentJob.hasNext(); i++) {
+                    mCurrentJob.placeNext();
+                    mCurrentJob.mPlacedBlocks++;
+                }
+
+                mCurrentJob.mPlacingNanos += System.nanoTime() - start;
+
+                if (!mCurrentJob.hasNext()) {
+                    mCurrentJob.onComplete();
+                    mCurrentJob = null;
+
+                    if (nextJob()) {
+                        mCurrentJob.mTicks++;
+                    }
+                }
+            } catch (RuntimeException e) {
+                // a broken job must not block the queue
+                fail(mCurrentJob, e);
+
+                if (nextJob()) {
+                    mCurrentJob.mTicks++;
+                }
+            }
+
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Back off when the last tick took too long, otherwise slowly give more time
+     * to the placement.
+     *
+     * @param tickNanos time elapsed since the last run
+     */
+    private void adaptBudget(long tickNanos) {
+        mLastTickNanos = tickNanos;
+
+        if (tickNanos > LAGGING_TICK_NANOS) {
+            mBudget = Math.max(mMinBudget, mBudget / 2);
+        } else {
+            mBudget = Math.min(mMaxBudget, mBudget + BUDGET_STEP);
+        }
+    }
+
+    private boolean nextJob() {
+        while ((mCurrentJob = mQueue.poll()) != null) {
+            mCurrentJob.mStartTime = System.currentTimeMillis();
+
+            try {
+                mCurrentJob.onStart();
+                return true;
+            } catch (RuntimeException e) {
+                fail(mCurrentJob, e);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Report a job that threw an exception and cancel it.
+     *
+     * @param job
+     * @param e
+     */
+    private void fail(PlacementJob job, RuntimeException e) {
+        mCurrentJob = null;
+        mPlugin.getLogger().warning(String.format("%s failed and was cancelled: %s", job.getDescription(), e));
+        job.notifyOwner(String.format("%s%s failed, see the server log.", ChatColor.RED, job.getDescription()));
+        cancel(job);
+    }
+
+    private void cancel(PlacementJob job) {
+        try {
+            job.onCancel();
+        } catch (RuntimeException e) {
+            mPlugin.getLogger().warning(String.format("Could not cancel %s: %s",
+                    job.getDescription().toLowerCase(), e));
+        }
+    }
+
+    /**
+     * Cancel every pending job, the one being placed and the ones still waiting
+     * in the queue. Called when the plugin is disabled.
+     */
+    public void shutdown() {
+        if (mCurrentJob != null) {
+            cancel(mCurrentJob);
+            mCurrentJob = null;
+        }
+
+        for (PlacementJob job; (job = mQueue.poll()) != null;) {
+            cancel(job);
+        }
+
+        try {
+            cancel();
+        } catch (IllegalStateException e) {
+            // the task was never scheduled
+        }
+    }
+
+    /**
+     * Current time budget per tick.
+     *
+     * @return the budget in milliseconds.
+     */
+    public double getBudget() {
+        return mBudget;
+    }
+
+    /**
+     * Duration of the last measured tick.
+     *
+     * @return the duration in milliseconds.
+     */
+    public double getLastTickMillis() {
+        return mLastTickNanos / 1_000_000.0;
+    }
+
+    /**
+     * Check if there are jobs being placed or waiting to be placed.
+     *
+     * @return true if the scheduler has nothing to do.
+     */
+    public boolean isIdle() {
+        return mCurrentJob == null && mQueue.isEmpty();
+    }
+}
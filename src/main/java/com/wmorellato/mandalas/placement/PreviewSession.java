@@ -0,0 +1,290 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+package com.wmorellato.mandalas.placement;
+
+import com.wmorellato.mandalas.components.MandalaAttributes;
+import com.wmorellato.mandalas.exceptions.CenterNotDefinedException;
+import com.wmorellato.mandalas.exceptions.RadiusNotDefinedException;
+import com.wmorellato.mandalas.raster.MandalaRaster;
+import com.wmorellato.mandalas.raster.SpanRaster;
+import com.wmorellato.mandalas.selection.RegionSelection;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitRunnable;
+
+/**
+ * Mandala shown to a single player with fake block changes, without touching
+ * the world. Block changes are sent a limited number per tick, so trying seeds
+ * never loads chunks or triggers lighting and physics.
+ *
+ * The preview shows what placing the mandala does: like {@link
+ * com.wmorellato.mandalas.BlockMapper}, the background is air, so the blocks of
+ * the region that are not covered by the mandala are shown as air. Background
+ * cells that are already air, or that are in chunks the player does not have,
+ * are not sent.
+ *
+ * The raster is kept so the mandala can be placed for real without generating
+ * it again. When the preview is discarded, the real blocks are sent back to the
+ * player, again a few per tick.
+ */
+public class PreviewSession {
+    final Plugin mPlugin;
+    final Player mPlayer;
+    final MandalaAttributes mAttributes;
+    final RegionSelection mSelection;
+    final Material[] mMaterials;
+    final SpanRaster mRaster;
+    final int mBlocksPerTick;
+    final BlockData[] mPalette = new BlockData[MandalaRaster.MAX_LABELS];
+    final World mWorld;
+    final int mX0;
+    final int mY0;
+    final int mZ0;
+    final int[] mRowStep;
+    final int[] mColStep;
+    // blocks sent so far, and how far the real blocks were sent back
+    final Cursor mSent = new Cursor();
+    final Cursor mRestored = new Cursor();
+    BukkitRunnable mTask;
+    boolean mEnded = false;
+
+    /**
+     * Must be called on the main thread.
+     *
+     * @param plugin
+     * @param player        the only player who sees the preview
+     * @param attr          attributes the mandala was generated with
+     * @param selection     region of the mandala, not changed afterwards
+     * @param materials
+     * @param raster
+     * @param blocksPerTick how many block changes are sent per tick
+     * @throws RadiusNotDefinedException
+     * @throws CenterNotDefinedException
+     */
+    public PreviewSession(Plugin plugin, Player player, MandalaAttributes attr, RegionSelection selection,
+            Material[] materials, SpanRaster raster, int blocksPerTick)
+            throws RadiusNotDefinedException, CenterNotDefinedException {
+        Block first = selection.getFirstBlock();
+
+        mPlugin = plugin;
+        mPlayer = player;
+        mAttributes = attr;
+        mSelection = selection;
+        mMaterials = materials;
+        mRaster = raster;
+        mBlocksPerTick = Math.max(1, blocksPerTick);
+        mWorld = first.getWorld();
+        mX0 = first.getX();
+        mY0 = first.getY();
+        mZ0 = first.getZ();
+        mRowStep = selection.getRowStep();
+        mColStep = selection.getColStep();
+
+        // same palette as BlockMapper
+        mPalette[MandalaRaster.BACKGROUND] = Material.AIR.createBlockData();
+
+        for (int i = 1; i < mPalette.length; i++) {
+            mPalette[i] = materials[i % materials.length].createBlockData();
+        }
+    }
+
+    /**
+     * Start sending the mandala to the player, unless the preview was already
+     * placed or discarded.
+     */
+    public void start() {
+        if (mEnded) {
+            return;
+        }
+
+        schedule(() -> send(mSent, null, false));
+    }
+
+    /**
+     * Stop sending the mandala and leave what the player sees as it is, because
+     * the mandala is about to be placed in the world.
+     */
+    public void end() {
+        if (mTask != null) {
+            mTask.cancel();
+        }
+
+        mEnded = true;
+    }
+
+    /**
+     * Stop sending the mandala and send the real blocks back to the player, in
+     * the parts already previewed.
+     *
+     * @param then run on the main thread once the player sees the world again,
+     *             may be null
+     */
+    public void discard(Runnable then) {
+        end();
+        schedule(() -> {
+            boolean done = !mPlayer.isOnline() || send(mRestored, mSent, true);
+
+            if (done && then != null) {
+                then.run();
+            }
+
+            return done;
+        });
+    }
+
+    /**
+     * Whether the preview is still shown. Previews of players who left the server
+     * are over as well.
+     *
+     * @return false if the preview was placed or discarded.
+     */
+    public boolean isActive() {
+        return !mEnded && mPlayer.isOnline();
+    }
+
+    private void schedule(Step step) {
+        mTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                if (step.run()) {
+                    cancel();
+                }
+            }
+        };
+        mTask.runTaskTimer(mPlugin, 0, 1);
+    }
+
+    /**
+     * Send the next blocks covered by the mandala, up to the budget of a tick.
+     *
+     * @param cursor  where to continue from
+     * @param limit   stop at this position, or null to go to the end
+     * @param restore send the real blocks instead of the mandala
+     * @return true if there is nothing left to send.
+     */
+    private boolean send(Cursor cursor, Cursor limit, boolean restore) {
+        if (!mPlayer.isOnline()) {
+            return true;
+        }
+
+        int budget = mBlocksPerTick;
+        int spans = mRaster.getSpanCount();
+
+        while (budget > 0 && cursor.mSpan < spans && (limit == null || cursor.before(limit))) {
+            while (mRaster.getFirstSpan(cursor.mRow + 1) <= cursor.mSpan) {
+                cursor.mRow++;
+            }
+
+            int label = mRaster.getLabel(cursor.mSpan);
+            int length = mRaster.getLength(cursor.mSpan);
+            int end = limit != null && limit.mSpan == cursor.mSpan ? limit.mOffset : length;
+
+            boolean background = label == MandalaRaster.BACKGROUND;
+            int row = cursor.mRow;
+            int col = mRaster.getStart(cursor.mSpan) + cursor.mOffset;
+            int count = Math.min(budget, end - cursor.mOffset);
+
+            for (int k = 0; k < count; k++, col++) {
+                int x = mX0 + row * mRowStep[0] + col * mColStep[0];
+                int y = mY0 + row * mRowStep[1] + col * mColStep[1];
+                int z = mZ0 + row * mRowStep[2] + col * mColStep[2];
+
+                if (!restore && !background) {
+                    mPlayer.sendBlockChange(new Location(mWorld, x, y, z), mPalette[label]);
+                    continue;
+                }
+
+                // the client forgets unloaded chunks anyway, no need to load them
+                if (!mWorld.isChunkLoaded(x >> 4, z >> 4)) {
+                    continue;
+                }
+
+                BlockData real = mWorld.getBlockAt(x, y, z).getBlockData();
+
+                // air was not replaced by the background, nothing to show or restore
+                if (background && real.getMaterial().isAir()) {
+                    continue;
+                }
+
+                mPlayer.sendBlockChange(new Location(mWorld, x, y, z), restore ? real : mPalette[label]);
+            }
+
+            budget -= count;
+            cursor.mOffset += count;
+
+            if (cursor.mOffset == length) {
+                cursor.next();
+            }
+        }
+
+        return cursor.mSpan >= spans || (limit != null && !cursor.before(limit));
+    }
+
+    public Player getPlayer() {
+        return mPlayer;
+    }
+
+    public MandalaAttributes getAttributes() {
+        return mAttributes;
+    }
+
+    public RegionSelection getSelection() {
+        return mSelection;
+    }
+
+    public Material[] getMaterials() {
+        return mMaterials;
+    }
+
+    public SpanRaster getRaster() {
+        return mRaster;
+    }
+
+    private interface Step {
+        /**
+         * @return true when the task is over.
+         */
+        boolean run();
+    }
+
+    /**
+     * Position in the spans of the raster.
+     */
+    static class Cursor {
+        int mRow = 0;
+        int mSpan = 0;
+        int mOffset = 0;
+
+        void next() {
+            mSpan++;
+            mOffset = 0;
+        }
+
+        boolean before(Cursor other) {
+            return mSpan < other.mSpan || (mSpan == other.mSpan && mOffset < other.mOffset);
+        }
+    }
+}
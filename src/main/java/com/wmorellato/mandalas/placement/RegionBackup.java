@@ -0,0 +1,311 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+package com.wmorellato.mandalas.placement;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.UUID;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+
+/**
+ * The blocks of a square region of the world, as they were before a mandala
+ * was placed over them. The square is stored row by row as runs of equal
+ * blocks, and each run only holds an index into a palette of the distinct
+ * blocks, so a region that is mostly air or stone takes a few bytes per row.
+ *
+ * Backups are built on a worker thread from a {@link RegionSnapshot}. The runs
+ * can be moved to a file with {@link #spill(File)} to free memory.
+ */
+public class RegionBackup {
+    // palette index of the blocks out of the world, which are never restored
+    static final int NOTHING = 0;
+
+    final UUID mWorld;
+    // first block, and offset of one step along a row and along a column
+    final int mX, mY, mZ;
+    final int[] mRowStep;
+    final int[] mColStep;
+    final int mSize;
+    // block data of each palette index, as in BlockData#getAsString()
+    final String[] mPalette;
+    // runs as pairs of varints: palette index and length
+    byte[] mRuns;
+    File mFile;
+    final int mByteSize;
+
+    private RegionBackup(UUID world, int x, int y, int z, int[] rowStep, int[] colStep, int size, String[] palette,
+            byte[] runs) {
+        mWorld = world;
+        mX = x;
+        mY = y;
+        mZ = z;
+        mRowStep = rowStep;
+        mColStep = colStep;
+        mSize = size;
+        mPalette = palette;
+        mRuns = runs;
+        mByteSize = runs.length;
+    }
+
+    /**
+     * Copy the blocks of a square region from a snapshot. Safe to call from any
+     * thread.
+     *
+     * @param snapshot copy of the region
+     * @param world    world of the region
+     * @param first    block at row 0, column 0
+     * @param rowStep  offset, in blocks, of one step along a row
+     * @param colStep  offset, in blocks, of one step along a column
+     * @param size     number of rows and columns
+     * @return the {@link RegionBackup} of the region.
+     */
+    public static RegionBackup capture(RegionSnapshot snapshot, World world, Block first, int[] rowStep,
+            int[] colStep, int size) {
+        HashMap<BlockData, Integer> indexes = new HashMap<>();
+        ArrayList<String> palette = new ArrayList<>();
+        ByteArrayOutputStream runs = new ByteArrayOutputStream();
+        BlockData last = null;
+        int lastIndex = -1;
+        int length = 0;
+
+        palette.add(null);
+
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                BlockData data = snapshot.getBlockData(row, col);
+                int index;
+
+                if (data == null) {
+                    index = NOTHING;
+                } else if (data.equals(last)) {
+                    index = lastIndex;
+                } else {
+                    Integer known = indexes.get(data);
+
+                    if (known == null) {
+                        known = palette.size();
+                        indexes.put(data, known);
+                        palette.add(data.getAsString());
+                    }
+
+                    index = known;
+                }
+
+                last = data;
+
+                if (index != lastIndex && length > 0) {
+                    writeVarInt(runs, lastIndex);
+                    writeVarInt(runs, length);
+                    length = 0;
+                }
+
+                lastIndex = index;
+                length++;
+            }
+        }
+
+        if (length > 0) {
+            writeVarInt(runs, lastIndex);
+            writeVarInt(runs, length);
+        }
+
+        return new RegionBackup(world.getUID(), first.getX(), first.getY(), first.getZ(), rowStep, colStep, size,
+                palette.toArray(new String[palette.size()]), runs.toByteArray());
+    }
+
+    /**
+     * Decode the runs, reading them back from disk if they were spilled.
+     *
+     * @return palette index and length of each run, one after the other.
+     * @throws IOException if the spilled runs could not be read
+     */
+    public int[] decodeRuns() throws IOException {
+        byte[] bytes = loadRuns();
+        int[] runs = new int[64];
+        int count = 0;
+        int[] pos = { 0 };
+
+        while (pos[0] < bytes.length) {
+            if (count + 2 > runs.length) {
+                runs = Arrays.copyOf(runs, runs.length * 2);
+            }
+
+            runs[count++] = readVarInt(bytes, pos);
+            runs[count++] = readVarInt(bytes, pos);
+        }
+
+        return Arrays.copyOf(runs, count);
+    }
+
+    /**
+     * Parse the palette. Must be called on the main thread.
+     *
+     * @return the {@link BlockData} of each palette index, null for
+     *         {@link #NOTHING}.
+     */
+    public BlockData[] createPalette() {
+        BlockData[] palette = new BlockData[mPalette.length];
+
+        for (int i = 1; i < palette.length; i++) {
+            palette[i] = Bukkit.createBlockData(mPalette[i]);
+        }
+
+        return palette;
+    }
+
+    /**
+     * Move the runs to a file and drop them from memory.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public synchronized void spill(File file) throws IOException {
+        if (mRuns == null) {
+            return;
+        }
+
+        file.getParentFile().mkdirs();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(mRuns.length);
+            out.write(mRuns);
+        }
+
+        mFile = file;
+        mRuns = null;
+    }
+
+    private synchronized byte[] loadRuns() throws IOException {
+        if (mRuns != null) {
+            return mRuns;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)))) {
+            byte[] runs = new byte[in.readInt()];
+            in.readFully(runs);
+
+            return runs;
+        }
+    }
+
+    /**
+     * Delete the file of the runs, if they were spilled.
+     */
+    public synchronized void discard() {
+        if (mFile != null) {
+            mFile.delete();
+            mFile = null;
+        }
+    }
+
+    /**
+     * Get the block of a cell of the region.
+     *
+     * @param world
+     * @param cell  row * size + column
+     * @return the {@link Block} of the cell.
+     */
+    public Block getBlock(World world, int cell) {
+        int row = cell / mSize;
+        int col = cell % mSize;
+
+        return world.getBlockAt(mX + row * mRowStep[0] + col * mColStep[0], mY + row * mRowStep[1] + col * mColStep[1],
+                mZ + row * mRowStep[2] + col * mColStep[2]);
+    }
+
+    public World getWorld() {
+        return Bukkit.getWorld(mWorld);
+    }
+
+    public Block getFirstBlock(World world) {
+        return world.getBlockAt(mX, mY, mZ);
+    }
+
+    public int[] getRowStep() {
+        return mRowStep;
+    }
+
+    public int[] getColStep() {
+        return mColStep;
+    }
+
+    public int getSize() {
+        return mSize;
+    }
+
+    public String getPaletteEntry(int index) {
+        return mPalette[index];
+    }
+
+    /**
+     * Size of the encoded runs, whether they are in memory or on disk.
+     *
+     * @return the number of bytes of the runs.
+     */
+    public int getByteSize() {
+        return mByteSize;
+    }
+
+    public synchronized boolean isSpilled() {
+        return mRuns == null;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] bytes, int[] pos) throws IOException {
+        int value = 0;
+
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (pos[0] >= bytes.length) {
+                break;
+            }
+
+            int b = bytes[pos[0]++] & 0xff;
+            value |= (b & 0x7f) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Corrupted region backup");
+    }
+}
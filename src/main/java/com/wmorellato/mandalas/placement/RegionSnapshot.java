@@ -0,0 +1,173 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+package com.wmorellato.mandalas.placement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+
+/**
+ * Read-only copy of the blocks of a square region of the world. The copy is
+ * taken on the main thread, a few chunks per tick by {@link ChunkPreloader},
+ * and can then be read from any thread, which lets the plugin compare the
+ * world with a mandala without blocking the server.
+ *
+ * Only the cells of the region are kept, as indexes in a palette of the block
+ * data found, so the copy of a flat mandala does not hold whole chunks.
+ */
+public class RegionSnapshot {
+    final int mMinChunkX;
+    final int mMinChunkZ;
+    final int mMaxHeight;
+    final int mX0;
+    final int mY0;
+    final int mZ0;
+    final int[] mRowStep;
+    final int[] mColStep;
+    final int mSize;
+    // palette index of each cell, row by row, 0 for the cells not copied
+    final int[] mCells;
+    final ArrayList<BlockData> mPalette = new ArrayList<>();
+    final HashMap<BlockData, Integer> mIndexes = new HashMap<>();
+
+    /**
+     * @param minChunkX x of the first chunk of the region
+     * @param minChunkZ z of the first chunk of the region
+     * @param maxHeight height of the world
+     * @param first     block at row 0, column 0
+     * @param rowStep   offset, in blocks, of one step along a row
+     * @param colStep   offset, in blocks, of one step along a column
+     * @param size      number of rows and columns
+     */
+    RegionSnapshot(int minChunkX, int minChunkZ, int maxHeight, Block first, int[] rowStep, int[] colStep,
+            int size) {
+        mMinChunkX = minChunkX;
+        mMinChunkZ = minChunkZ;
+        mMaxHeight = maxHeight;
+        mX0 = first.getX();
+        mY0 = first.getY();
+        mZ0 = first.getZ();
+        mRowStep = rowStep;
+        mColStep = colStep;
+        mSize = size;
+        mCells = new int[size * size];
+
+        mPalette.add(null);
+    }
+
+    /**
+     * Copy the cells of the region inside a loaded chunk. The snapshot of the
+     * chunk is dropped right away. Must be called on the main thread.
+     *
+     * @param world
+     * @param i     chunk x, counted from the first chunk of the region
+     * @param j     chunk z, counted from the first chunk of the region
+     */
+    void capture(World world, int i, int j) {
+        int chunkX = mMinChunkX + i;
+        int chunkZ = mMinChunkZ + j;
+        ChunkSnapshot chunk = world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, false, false);
+        int[] rows = indexRange(mRowStep, chunkX, chunkZ);
+        int[] cols = indexRange(mColStep, chunkX, chunkZ);
+        BlockData last = null;
+        int lastIndex = 0;
+
+        for (int row = rows[0]; row <= rows[1]; row++) {
+            for (int col = cols[0]; col <= cols[1]; col++) {
+                int x = mX0 + row * mRowStep[0] + col * mColStep[0];
+                int y = mY0 + row * mRowStep[1] + col * mColStep[1];
+                int z = mZ0 + row * mRowStep[2] + col * mColStep[2];
+
+                if (y < 0 || y >= mMaxHeight) {
+                    continue;
+                }
+
+                BlockData data = chunk.getBlockData(x & 15, y, z & 15);
+
+                if (!data.equals(last)) {
+                    Integer known = mIndexes.get(data);
+
+                    if (known == null) {
+                        known = mPalette.size();
+                        mIndexes.put(data, known);
+                        mPalette.add(data);
+                    }
+
+                    last = data;
+                    lastIndex = known;
+                }
+
+                mCells[row * mSize + col] = lastIndex;
+            }
+        }
+    }
+
+    /**
+     * Rows or columns of the region inside a chunk. The steps follow a single
+     * axis, and every row or column crosses the chunk if that axis is y.
+     *
+     * @return the first and the last index, empty if the first is larger.
+     */
+    private int[] indexRange(int[] step, int chunkX, int chunkZ) {
+        int axis = step[0] != 0 ? 0 : step[2] != 0 ? 2 : 1;
+
+        if (axis == 1) {
+            return new int[] { 0, mSize - 1 };
+        }
+
+        int origin = axis == 0 ? mX0 : mZ0;
+        int min = (axis == 0 ? chunkX : chunkZ) << 4;
+        // the step is 1 or -1, so the index is the distance times the step
+        int a = (min - origin) * step[axis];
+        int b = (min + 15 - origin) * step[axis];
+
+        return new int[] { Math.max(0, Math.min(a, b)), Math.min(mSize - 1, Math.max(a, b)) };
+    }
+
+    /**
+     * Get the material of a cell when the snapshot was taken.
+     *
+     * @param row
+     * @param col
+     * @return the {@link Material} of the block, or null if it is out of the
+     *         world or was not copied.
+     */
+    public Material getType(int row, int col) {
+        BlockData data = getBlockData(row, col);
+
+        return data == null ? null : data.getMaterial();
+    }
+
+    /**
+     * Get the data of a cell when the snapshot was taken.
+     *
+     * @param row
+     * @param col
+     * @return the {@link BlockData} of the block, or null if it is out of the
+     *         world or was not copied.
+     */
+    public BlockData getBlockData(int row, int col) {
+        return mPalette.get(mCells[row * mSize + col]);
+    }
+}
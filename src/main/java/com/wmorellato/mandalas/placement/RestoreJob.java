@@ -0,0 +1,283 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+package com.wmorellato.mandalas.placement;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import org.bukkit.ChatColor;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+
+/**
+ * Put back the blocks of a {@link RegionBackup}, going through the same
+ * budgeted placement as the mandalas. Before anything is written, the blocks
+ * about to be overwritten are backed up in turn and recorded in the
+ * {@link UndoJournal}, so an undo can be redone and the other way around. Only
+ * the blocks that differ from the backup are written. If the job fails or is
+ * cancelled, the backup goes back on top of the history it was taken from.
+ *
+ * Blocks are backed up and restored as {@link BlockData}, so the contents of
+ * tile entities, such as the items of a chest or the text of a sign, are not
+ * restored.
+ */
+public class RestoreJob extends PlacementJob {
+    final RegionBackup mBackup;
+    final UndoJournal mJournal;
+    final UUID mPlayer;
+    final boolean mUndo;
+    final Executor mWorker;
+
+    World mWorld;
+    ChunkPreloader mChunks;
+    CompletableFuture<Analysis> mAnalysis;
+    BlockData[] mPalette;
+    // runs of cells to write, as triplets: first cell, length and palette index
+    int[] mRuns;
+    int mRun = 0;
+    int mOffset = 0;
+    // the backup was put back in the history and must not be discarded
+    boolean mPutBack = false;
+
+    /**
+     * @param backup  blocks to put back
+     * @param journal where the overwritten blocks are recorded
+     * @param player  player owning the history
+     * @param undo    true for an undo, false for a redo
+     * @param worker  executor used to compare the world with the backup
+     */
+    public RestoreJob(RegionBackup backup, UndoJournal journal, UUID player, boolean undo, Executor worker) {
+        mBackup = backup;
+        mJournal = journal;
+        mPlayer = player;
+        mUndo = undo;
+        mWorker = worker;
+    }
+
+    @Override
+    protected boolean prepare() {
+        if (mWorld == null) {
+            mWorld = mBackup.getWorld();
+
+            if (mWorld == null) {
+                notifyOwner(String.format("%sThe world of this %s is not loaded.", ChatColor.RED,
+                        getDescription().toLowerCase()));
+                mRuns = new int[0];
+                putBack();
+                return true;
+            }
+
+            int[] bounds = getBounds();
+            mChunks = new ChunkPreloader(getPlugin(), mWorld, bounds[0], bounds[1], bounds[2], bounds[3]);
+            mChunks.takeSnapshots(mBackup.getFirstBlock(mWorld), mBackup.getRowStep(), mBackup.getColStep(),
+                    mBackup.getSize());
+        }
+
+        if (!mChunks.loadNext(getPlugin().getConfigManager().getChunksPerTick())) {
+            return false;
+        }
+
+        if (mAnalysis == null) {
+            RegionSnapshot snapshot = mChunks.getSnapshot();
+
+            mAnalysis = CompletableFuture.supplyAsync(() -> analyse(snapshot), mWorker);
+
+            return false;
+        }
+
+        if (!mAnalysis.isDone()) {
+            return false;
+        }
+
+        try {
+            Analysis analysis = mAnalysis.join();
+
+            mRuns = analysis.mRuns;
+            mPalette = mBackup.createPalette();
+
+            if (mUndo) {
+                mJournal.pushRedo(mPlayer, analysis.mCurrent);
+            } else {
+                mJournal.pushUndo(mPlayer, analysis.mCurrent);
+            }
+        } catch (CompletionException e) {
+            getPlugin().getLogger().warning("Could not read an undo entry: " + e.getCause());
+            notifyOwner(String.format("%sCould not read the blocks to restore.", ChatColor.RED));
+            mRuns = new int[0];
+            putBack();
+        }
+
+        return true;
+    }
+
+    /**
+     * Put the backup back on top of the history it was taken from, so the undo
+     * or redo can be tried again.
+     */
+    private void putBack() {
+        if (mPutBack) {
+            return;
+        }
+
+        mPutBack = true;
+
+        if (mUndo) {
+            mJournal.pushUndo(mPlayer, mBackup);
+        } else {
+            mJournal.pushRedo(mPlayer, mBackup);
+        }
+    }
+
+    /**
+     * Back up the blocks in the world now and list the cells where they differ
+     * from the backup being restored.
+     */
+    private Analysis analyse(RegionSnapshot snapshot) {
+        Analysis analysis = new Analysis();
+        analysis.mCurrent = mJournal.spillIfLarge(RegionBackup.capture(snapshot, mWorld, mBackup.getFirstBlock(mWorld),
+                mBackup.getRowStep(), mBackup.getColStep(), mBackup.getSize()));
+
+        int[] target, current;
+
+        try {
+            target = mBackup.decodeRuns();
+            current = analysis.mCurrent.decodeRuns();
+        } catch (IOException e) {
+            analysis.mCurrent.discard();
+            throw new UncheckedIOException(e);
+        }
+
+        int[] runs = new int[3 * 64];
+        int count = 0;
+        int cell = 0;
+        int t = 0, c = 0;
+        int targetEnd = target.length > 0 ? target[1] : 0;
+        int currentEnd = current.length > 0 ? current[1] : 0;
+
+        while (t < target.length && c < current.length) {
+            int end = Math.min(targetEnd, currentEnd);
+            int index = target[t];
+            String wanted = mBackup.getPaletteEntry(index);
+            String found = analysis.mCurrent.getPaletteEntry(current[c]);
+
+            if (wanted != null && found != null && !wanted.equals(found)) {
+                if (count > 0 && runs[count - 3] + runs[count - 2] == cell && runs[count - 1] == index) {
+                    runs[count - 2] += end - cell;
+                } else {
+                    if (count + 3 > runs.length) {
+                        runs = Arrays.copyOf(runs, runs.length * 2);
+                    }
+
+                    runs[count++] = cell;
+                    runs[count++] = end - cell;
+                    runs[count++] = index;
+                }
+            }
+
+            cell = end;
+
+            if (cell == targetEnd && (t += 2) < target.length) {
+                targetEnd += target[t + 1];
+            }
+
+            if (cell == currentEnd && (c += 2) < current.length) {
+                currentEnd += current[c + 1];
+            }
+        }
+
+        analysis.mRuns = Arrays.copyOf(runs, count);
+
+        return analysis;
+    }
+
+    /**
+     * Smallest and largest x and z of the region.
+     */
+    private int[] getBounds() {
+        int size = mBackup.getSize() - 1;
+        Block first = mBackup.getFirstBlock(mWorld);
+        int x1 = first.getX() + size * (mBackup.getRowStep()[0] + mBackup.getColStep()[0]);
+        int z1 = first.getZ() + size * (mBackup.getRowStep()[2] + mBackup.getColStep()[2]);
+
+        return new int[] { Math.min(first.getX(), x1), Math.min(first.getZ(), z1), Math.max(first.getX(), x1),
+                Math.max(first.getZ(), z1) };
+    }
+
+    @Override
+    public boolean hasNext() {
+        return mRuns != null && mRun < mRuns.length;
+    }
+
+    @Override
+    public void placeNext() {
+        mBackup.getBlock(mWorld, mRuns[mRun] + mOffset).setBlockData(mPalette[mRuns[mRun + 2]]);
+
+        if (++mOffset == mRuns[mRun + 1]) {
+            mRun += 3;
+            mOffset = 0;
+        }
+    }
+
+    @Override
+    protected void onComplete() {
+        if (mChunks != null) {
+            mChunks.release();
+        }
+
+        if (!mPutBack) {
+            mBackup.discard();
+        }
+
+        super.onComplete();
+    }
+
+    @Override
+    protected void onCancel() {
+        if (mChunks != null) {
+            mChunks.release();
+        }
+
+        // the blocks backed up by the analysis were not pushed to the history yet
+        if (mAnalysis != null && mRuns == null) {
+            mAnalysis.thenAccept(analysis -> analysis.mCurrent.discard());
+        }
+
+        putBack();
+    }
+
+    @Override
+    public String getDescription() {
+        return mUndo ? "Undo" : "Redo";
+    }
+
+    /**
+     * Result of the comparison made on the worker.
+     */
+    private static class Analysis {
+        RegionBackup mCurrent;
+        int[] mRuns;
+    }
+}
@@ -0,0 +1,185 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+package com.wmorellato.mandalas.placement;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Undo and redo history of the placements of each player. Each entry is a
+ * {@link RegionBackup} of the blocks a placement overwrote; undoing restores
+ * them and records the blocks it overwrote in turn, so the same entry can be
+ * redone.
+ *
+ * Only the last few placements of each player are kept, and the runs of big
+ * backups are moved to files in the undo folder. Everything but
+ * {@link #spillIfLarge(RegionBackup)} must be called on the main thread.
+ */
+public class UndoJournal {
+    final File mFolder;
+    final int mDepth;
+    final long mSpillBytes;
+    final Logger mLogger;
+    final HashMap<UUID, History> mHistories = new HashMap<>();
+
+    /**
+     * @param folder     where big backups are written. Files left there by a
+     *                   previous run are deleted
+     * @param depth      how many placements of each player can be undone
+     * @param spillBytes backups bigger than this are moved to disk
+     * @param logger
+     */
+    public UndoJournal(File folder, int depth, long spillBytes, Logger logger) {
+        mFolder = folder;
+        mDepth = depth;
+        mSpillBytes = spillBytes;
+        mLogger = logger;
+
+        File[] leftovers = folder.listFiles();
+
+        if (leftovers != null) {
+            for (File f : leftovers) {
+                f.delete();
+            }
+        }
+    }
+
+    /**
+     * Check if placements should be recorded at all.
+     *
+     * @return false if the depth is 0.
+     */
+    public boolean isEnabled() {
+        return mDepth > 0;
+    }
+
+    /**
+     * Move the runs of a backup to disk if it is too big to be kept in memory. May
+     * be called from any thread.
+     *
+     * @param backup
+     * @return the same backup.
+     */
+    public RegionBackup spillIfLarge(RegionBackup backup) {
+        if (backup.getByteSize() > mSpillBytes) {
+            try {
+                backup.spill(new File(mFolder, UUID.randomUUID() + ".bin"));
+            } catch (IOException e) {
+                mLogger.warning("Could not write an undo entry to disk, keeping it in memory: " + e);
+            }
+        }
+
+        return backup;
+    }
+
+    /**
+     * Record the blocks overwritten by a new placement. The redo history of the
+     * player is dropped.
+     *
+     * @param player
+     * @param backup
+     */
+    public void record(UUID player, RegionBackup backup) {
+        History history = history(player);
+
+        for (RegionBackup redo : history.mRedo) {
+            redo.discard();
+        }
+
+        history.mRedo.clear();
+        push(history.mUndo, backup);
+    }
+
+    /**
+     * Take the last placement of a player to be undone.
+     *
+     * @param player
+     * @return the {@link RegionBackup} to restore, or null if there is nothing to
+     *         undo.
+     */
+    public RegionBackup popUndo(UUID player) {
+        return history(player).mUndo.pollLast();
+    }
+
+    /**
+     * Take the last undone placement of a player to be redone.
+     *
+     * @param player
+     * @return the {@link RegionBackup} to restore, or null if there is nothing to
+     *         redo.
+     */
+    public RegionBackup popRedo(UUID player) {
+        return history(player).mRedo.pollLast();
+    }
+
+    /**
+     * Record the blocks overwritten by an undo, so it can be redone.
+     *
+     * @param player
+     * @param backup
+     */
+    void pushRedo(UUID player, RegionBackup backup) {
+        push(history(player).mRedo, backup);
+    }
+
+    /**
+     * Record the blocks overwritten by a redo, so it can be undone again.
+     *
+     * @param player
+     * @param backup
+     */
+    void pushUndo(UUID player, RegionBackup backup) {
+        push(history(player).mUndo, backup);
+    }
+
+    private void push(ArrayDeque<RegionBackup> stack, RegionBackup backup) {
+        stack.addLast(backup);
+
+        while (stack.size() > mDepth) {
+            stack.pollFirst().discard();
+        }
+    }
+
+    private History history(UUID player) {
+        return mHistories.computeIfAbsent(player, p -> new History());
+    }
+
+    /**
+     * Drop every history and delete the files. Called when the plugin is
+     * disabled.
+     */
+    public void clear() {
+        for (History history : mHistories.values()) {
+            history.mUndo.forEach(RegionBackup::discard);
+            history.mRedo.forEach(RegionBackup::discard);
+        }
+
+        mHistories.clear();
+    }
+
+    private static class History {
+        final ArrayDeque<RegionBackup> mUndo = new ArrayDeque<>();
+        final ArrayDeque<RegionBackup> mRedo = new ArrayDeque<>();
+    }
+}
@@ -0,0 +1,162 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+package com.wmorellato.mandalas.raster;
+
+import java.util.Arrays;
+
+/**
+ * Map from int to int using open addressing with linear probing. Nothing is
+ * boxed, which matters when a key is touched once per pixel.
+ */
+public class IntIntMap {
+    private static final int FREE = Integer.MIN_VALUE;
+
+    int[] mKeys;
+    int[] mValues;
+    int mSize = 0;
+
+    public IntIntMap() {
+        this(16);
+    }
+
+    public IntIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+
+        mKeys = new int[capacity];
+        mValues = new int[capacity];
+        Arrays.fill(mKeys, FREE);
+    }
+
+    /**
+     * Get the value of a key.
+     *
+     * @param key          any value except {@link Integer#MIN_VALUE}
+     * @param defaultValue value returned if the key is not in the map
+     * @return the value of the key.
+     */
+    public int get(int key, int defaultValue) {
+        int slot = find(key);
+
+        return mKeys[slot] == FREE ? defaultValue : mValues[slot];
+    }
+
+    /**
+     * Set the value of a key.
+     *
+     * @param key   any value except {@link Integer#MIN_VALUE}
+     * @param value
+     */
+    public void put(int key, int value) {
+        int slot = insert(key);
+        mValues[slot] = value;
+    }
+
+    /**
+     * Add to the value of a key, starting from 0 if it is not in the map.
+     *
+     * @param key   any value except {@link Integer#MIN_VALUE}
+     * @param delta
+     * @return the new value of the key.
+     */
+    public int add(int key, int delta) {
+        int slot = insert(key);
+        mValues[slot] += delta;
+
+        return mValues[slot];
+    }
+
+    public boolean containsKey(int key) {
+        return mKeys[find(key)] != FREE;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Keys of the map, in no particular order.
+     *
+     * @return a new array with the keys.
+     */
+    public int[] keys() {
+        int[] keys = new int[mSize];
+        int j = 0;
+
+        for (int i = 0; i < mKeys.length; i++) {
+            if (mKeys[i] != FREE) {
+                keys[j++] = mKeys[i];
+            }
+        }
+
+        return keys;
+    }
+
+    private int find(int key) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("Integer.MIN_VALUE can not be used as a key");
+        }
+
+        int mask = mKeys.length - 1;
+        int slot = mix(key) & mask;
+
+        while (mKeys[slot] != FREE && mKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private int insert(int key) {
+        int slot = find(key);
+
+        if (mKeys[slot] == FREE) {
+            if ((mSize + 1) * 2 > mKeys.length) {
+                grow();
+                slot = find(key);
+            }
+
+            mKeys[slot] = key;
+            mSize++;
+        }
+
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = mKeys;
+        int[] oldValues = mValues;
+
+        mKeys = new int[oldKeys.length * 2];
+        mValues = new int[oldValues.length * 2];
+        Arrays.fill(mKeys, FREE);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = find(oldKeys[i]);
+                mKeys[slot] = oldKeys[i];
+                mValues[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
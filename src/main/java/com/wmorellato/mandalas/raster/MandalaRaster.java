@@ -0,0 +1,183 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+package com.wmorellato.mandalas.raster;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.HashSet;
+
+/**
+ * Pixels of a mandala stored in a single flat array, row by row. Each pixel
+ * holds a label instead of a color: 0 is the background and the element of
+ * index i is drawn with the label (i % 255) + 1, so the material of a block is
+ * found directly from its label.
+ *
+ * The elements are drawn straight into the array, and the pixel of a given row
+ * and column is at {@code offset + row * stride + col}.
+ */
+public class MandalaRaster {
+    public static final int BACKGROUND = 0;
+    public static final int MAX_LABELS = 256;
+
+    final byte[] mLabels;
+    final int mWidth;
+    final int mHeight;
+    final int mOffset;
+    final int mStride;
+    private volatile RasterStats mStats;
+
+    public MandalaRaster(byte[] labels, int width, int height, int offset, int stride) {
+        mLabels = labels;
+        mWidth = width;
+        mHeight = height;
+        mOffset = offset;
+        mStride = stride;
+    }
+
+    /**
+     * Create a raster filled with the background.
+     *
+     * @param width
+     * @param height
+     * @return a new {@link MandalaRaster}.
+     */
+    public static MandalaRaster create(int width, int height) {
+        return new MandalaRaster(new byte[width * height], width, height, 0, width);
+    }
+
+    /**
+     * Wrap the labels in an indexed image, to save the mandala to a file. The
+     * image shares the labels of this raster, no copy is made.
+     *
+     * @return an indexed {@link BufferedImage} of the raster.
+     */
+    public BufferedImage toImage() {
+        return ImageFactory.createImage(this);
+    }
+
+    /**
+     * Label used to draw the element with the given index.
+     *
+     * @param elementIndex
+     * @return a label between 1 and 255.
+     */
+    public static int labelOf(int elementIndex) {
+        return (elementIndex % (MAX_LABELS - 1)) + 1;
+    }
+
+    /**
+     * Creates the images and holds their palette. Nothing here is loaded before
+     * the first image is made, so a server that never exports does not load the
+     * AWT image classes and their native libraries.
+     */
+    private static class ImageFactory {
+        static final IndexColorModel COLOR_MODEL = createColorModel();
+
+        static BufferedImage createImage(MandalaRaster r) {
+            DataBufferByte buffer = new DataBufferByte(r.mLabels, r.mLabels.length, r.mOffset);
+            WritableRaster raster = Raster.createInterleavedRaster(buffer, r.mWidth, r.mHeight, r.mStride, 1,
+                    new int[] { 0 }, null);
+
+            return new BufferedImage(COLOR_MODEL, raster, false, null);
+        }
+    }
+
+    /**
+     * Palette with the background in black and 255 distinct colors, spread over
+     * the hue circle so saved images are still readable.
+     */
+    private static IndexColorModel createColorModel() {
+        byte[] r = new byte[MAX_LABELS];
+        byte[] g = new byte[MAX_LABELS];
+        byte[] b = new byte[MAX_LABELS];
+        HashSet<Integer> used = new HashSet<>();
+        used.add(0);
+
+        for (int i = 1; i < MAX_LABELS; i++) {
+            float hue = (i * 0.618034f) % 1f;
+            float brightness = 0.6f + 0.4f * ((i * 7) % 5) / 4f;
+            int rgb = Color.HSBtoRGB(hue, 0.8f, brightness) & 0xffffff;
+
+            while (!used.add(rgb)) {
+                rgb = (rgb + 1) & 0xffffff;
+            }
+
+            r[i] = (byte) (rgb >> 16);
+            g[i] = (byte) (rgb >> 8);
+            b[i] = (byte) rgb;
+        }
+
+        return new IndexColorModel(8, MAX_LABELS, r, g, b);
+    }
+
+    /**
+     * Get the label of the pixel at the given row and column.
+     *
+     * @param row
+     * @param col
+     * @return the label of the pixel, 0 for the background.
+     */
+    public int get(int row, int col) {
+        return mLabels[mOffset + row * mStride + col] & 0xff;
+    }
+
+    /**
+     * Get the number of pixels of each label. They are counted the first time
+     * this is called, so call it from a worker thread if the raster is big.
+     *
+     * @return the {@link RasterStats} of this raster.
+     */
+    public RasterStats getStats() {
+        if (mStats == null) {
+            mStats = RasterStats.of(this);
+        }
+
+        return mStats;
+    }
+
+    /**
+     * The backing array. Use {@link #getOffset()} and {@link #getStride()} to
+     * find the pixels in it.
+     *
+     * @return the array holding the labels.
+     */
+    public byte[] getLabels() {
+        return mLabels;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getOffset() {
+        return mOffset;
+    }
+
+    public int getStride() {
+        return mStride;
+    }
+}
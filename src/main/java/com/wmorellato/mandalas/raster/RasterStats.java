@@ -0,0 +1,121 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+package com.wmorellato.mandalas.raster;
+
+import org.bukkit.Material;
+
+/**
+ * Number of pixels of each label in a raster, collected in a single pass. The
+ * counts do not depend on the materials chosen, so they are computed once per
+ * raster and reused for every palette.
+ */
+public class RasterStats {
+    final int[] mLabelCounts = new int[MandalaRaster.MAX_LABELS];
+    long mTotal = 0;
+
+    private RasterStats() {
+    }
+
+    /**
+     * Count the pixels of each label.
+     *
+     * @param raster
+     * @return the {@link RasterStats} of the raster.
+     */
+    public static RasterStats of(MandalaRaster raster) {
+        RasterStats stats = new RasterStats();
+        byte[] labels = raster.getLabels();
+
+        for (int row = 0; row < raster.getHeight(); row++) {
+            int start = raster.getOffset() + row * raster.getStride();
+            int end = start + raster.getWidth();
+
+            for (int i = start; i < end; i++) {
+                stats.mLabelCounts[labels[i] & 0xff]++;
+            }
+        }
+
+        stats.mTotal = (long) raster.getWidth() * raster.getHeight();
+
+        return stats;
+    }
+
+    /**
+     * Count the pixels of each label from the spans of a raster.
+     *
+     * @param raster
+     * @return the {@link RasterStats} of the raster.
+     */
+    public static RasterStats of(SpanRaster raster) {
+        RasterStats stats = new RasterStats();
+
+        for (int span = 0; span < raster.getSpanCount(); span++) {
+            stats.mLabelCounts[raster.getLabel(span)] += raster.getLength(span);
+        }
+
+        stats.mTotal = (long) raster.getWidth() * raster.getHeight();
+
+        return stats;
+    }
+
+    /**
+     * Count how many blocks of each material the raster needs when drawn with the
+     * given palette.
+     *
+     * @param palette material of each label
+     * @return map from {@link Material#ordinal()} to number of blocks.
+     */
+    public IntIntMap countByMaterial(Material[] palette) {
+        IntIntMap counts = new IntIntMap();
+
+        for (int label = 0; label < mLabelCounts.length; label++) {
+            if (mLabelCounts[label] > 0) {
+                counts.add(palette[label].ordinal(), mLabelCounts[label]);
+            }
+        }
+
+        return counts;
+    }
+
+    public int getLabelCount(int label) {
+        return mLabelCounts[label];
+    }
+
+    /**
+     * Number of pixels not covered by any element.
+     *
+     * @return the number of background pixels.
+     */
+    public int getBackgroundCount() {
+        return mLabelCounts[MandalaRaster.BACKGROUND];
+    }
+
+    /**
+     * Number of pixels covered by some element.
+     *
+     * @return the number of pixels that are not background.
+     */
+    public long getDrawnCount() {
+        return mTotal - getBackgroundCount();
+    }
+
+    public long getTotal() {
+        return mTotal;
+    }
+}
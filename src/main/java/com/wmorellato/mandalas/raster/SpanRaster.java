@@ -0,0 +1,446 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+package com.wmorellato.mandalas.raster;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Labels of a mandala stored as runs of pixels with the same label. Each row
+ * is split into spans (row, start, length, label) that cover it completely,
+ * background included, so a mandala made of a few large shapes takes a small
+ * fraction of the memory of its pixels. This is the format handed from the
+ * generator to the placer.
+ *
+ * A span is packed in a single int, {@code start << 8 | label}. The spans of a
+ * row are consecutive and their length is the distance to the start of the
+ * next span, or to the end of the row for the last one.
+ */
+public class SpanRaster {
+    private static final int MAGIC = 0x4d53504e; // MSPN
+    private static final int VERSION = 1;
+    // a span keeps its first column in 23 bits
+    private static final int MAX_SIZE = 1 << 23;
+    // spans allocated at first when reading, so a bad header can not ask for more
+    private static final int INITIAL_READ_SPANS = 4096;
+
+    final int mWidth;
+    final int mHeight;
+    // index of the first span of each row, plus the total number of spans
+    final int[] mRowOffsets;
+    final int[] mSpans;
+    private volatile RasterStats mStats;
+
+    private SpanRaster(int width, int height, int[] rowOffsets, int[] spans) {
+        mWidth = width;
+        mHeight = height;
+        mRowOffsets = rowOffsets;
+        mSpans = spans;
+    }
+
+    /**
+     * Encode the pixels of a raster as spans.
+     *
+     * @param raster
+     * @return a {@link SpanRaster} with the same labels.
+     */
+    public static SpanRaster of(MandalaRaster raster) {
+        byte[] labels = raster.getLabels();
+        int[] rowOffsets = new int[raster.getHeight() + 1];
+        int[] spans = new int[Math.max(16, raster.getHeight() * 4)];
+        int count = 0;
+
+        for (int row = 0; row < raster.getHeight(); row++) {
+            int base = raster.getOffset() + row * raster.getStride();
+            int previous = -1;
+            rowOffsets[row] = count;
+
+            for (int col = 0; col < raster.getWidth(); col++) {
+                int label = labels[base + col] & 0xff;
+
+                if (label == previous) {
+                    continue;
+                }
+
+                if (count == spans.length) {
+                    spans = Arrays.copyOf(spans, count * 2);
+                }
+
+                spans[count++] = col << 8 | label;
+                previous = label;
+            }
+        }
+
+        rowOffsets[raster.getHeight()] = count;
+
+        return new SpanRaster(raster.getWidth(), raster.getHeight(), rowOffsets, Arrays.copyOf(spans, count));
+    }
+
+    /**
+     * Collects the spans of a raster painted in tiles, so the whole raster never
+     * has to be held as pixels. Tiles are added band by band, from top to bottom,
+     * and from left to right inside a band; every tile of a band starts on the
+     * same row and has the same height. Spans of the same label that meet at the
+     * border of two tiles are merged.
+     */
+    public static class Builder {
+        final int mWidth;
+        final int mHeight;
+        final int[] mRowOffsets;
+        int[] mSpans = new int[256];
+        int mCount = 0;
+        int mRowsDone = 0;
+
+        // spans of each row of the current band, not appended yet
+        int[][] mPending = new int[0][];
+        int[] mPendingCount = new int[0];
+        int mBandRow = -1;
+        int mBandHeight = 0;
+
+        public Builder(int width, int height) {
+            mWidth = width;
+            mHeight = height;
+            mRowOffsets = new int[height + 1];
+        }
+
+        /**
+         * Add the spans of a tile.
+         *
+         * @param tile pixels of the tile
+         * @param row  row of the raster holding the first row of the tile
+         * @param col  column of the raster holding the first column of the tile
+         * @return this builder.
+         */
+        public Builder addTile(MandalaRaster tile, int row, int col) {
+            if (row != mBandRow) {
+                flush();
+
+                if (row != mRowsDone) {
+                    throw new IllegalArgumentException("Tiles must be added from top to bottom");
+                }
+
+                startBand(row, tile.getHeight());
+            }
+
+            byte[] labels = tile.getLabels();
+
+            for (int r = 0; r < tile.getHeight(); r++) {
+                int base = tile.getOffset() + r * tile.getStride();
+                int[] spans = mPending[r];
+                int count = mPendingCount[r];
+                int previous = count == 0 ? -1 : spans[count - 1] & 0xff;
+
+                for (int c = 0; c < tile.getWidth(); c++) {
+                    int label = labels[base + c] & 0xff;
+
+                    if (label == previous) {
+                        continue;
+                    }
+
+                    if (count == spans.length) {
+                        spans = mPending[r] = Arrays.copyOf(spans, count * 2);
+                    }
+
+                    spans[count++] = (col + c) << 8 | label;
+                    previous = label;
+                }
+
+                mPendingCount[r] = count;
+            }
+
+            return this;
+        }
+
+        /**
+         * Get the raster, once every row was added.
+         *
+         * @return the {@link SpanRaster} of the tiles.
+         */
+        public SpanRaster build() {
+            flush();
+
+            if (mRowsDone != mHeight) {
+                throw new IllegalStateException(String.format("Only %d of %d rows were added", mRowsDone, mHeight));
+            }
+
+            mRowOffsets[mHeight] = mCount;
+
+            return new SpanRaster(mWidth, mHeight, mRowOffsets, Arrays.copyOf(mSpans, mCount));
+        }
+
+        private void startBand(int row, int height) {
+            if (mPending.length < height) {
+                mPending = new int[height][];
+                mPendingCount = new int[height];
+
+                for (int r = 0; r < height; r++) {
+                    mPending[r] = new int[16];
+                }
+            }
+
+            mBandRow = row;
+            mBandHeight = height;
+        }
+
+        private void flush() {
+            for (int r = 0; r < mBandHeight; r++) {
+                int count = mPendingCount[r];
+
+                if (mCount + count > mSpans.length) {
+                    mSpans = Arrays.copyOf(mSpans, Math.max(mSpans.length * 2, mCount + count));
+                }
+
+                mRowOffsets[mRowsDone++] = mCount;
+                System.arraycopy(mPending[r], 0, mSpans, mCount, count);
+                mCount += count;
+                mPendingCount[r] = 0;
+            }
+
+            mBandRow = -1;
+            mBandHeight = 0;
+        }
+    }
+
+    /**
+     * Get the label of the pixel at the given row and column.
+     *
+     * @param row
+     * @param col
+     * @return the label of the pixel, 0 for the background.
+     */
+    public int get(int row, int col) {
+        int low = mRowOffsets[row];
+        int high = mRowOffsets[row + 1] - 1;
+
+        // last span of the row starting at or before the column
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+
+            if (getStart(mid) <= col) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return getLabel(low);
+    }
+
+    /**
+     * Index of the first span of a row. The spans of the row go up to, but not
+     * including, the first span of the next row.
+     *
+     * @param row a row between 0 and the height, inclusive
+     * @return the index of the span.
+     */
+    public int getFirstSpan(int row) {
+        return mRowOffsets[row];
+    }
+
+    public int getStart(int span) {
+        return mSpans[span] >>> 8;
+    }
+
+    public int getLabel(int span) {
+        return mSpans[span] & 0xff;
+    }
+
+    public int getLength(int span) {
+        int start = getStart(span);
+
+        // the next span starts a new row if it does not start after this one
+        if (span + 1 < mSpans.length && getStart(span + 1) > start) {
+            return getStart(span + 1) - start;
+        }
+
+        return mWidth - start;
+    }
+
+    public int getSpanCount() {
+        return mSpans.length;
+    }
+
+    /**
+     * Decode the spans back into pixels.
+     *
+     * @return a new {@link MandalaRaster} with the labels of this raster.
+     */
+    public MandalaRaster toRaster() {
+        MandalaRaster raster = MandalaRaster.create(mWidth, mHeight);
+        byte[] labels = raster.getLabels();
+
+        for (int row = 0; row < mHeight; row++) {
+            for (int span = mRowOffsets[row]; span < mRowOffsets[row + 1]; span++) {
+                int start = row * mWidth + getStart(span);
+                Arrays.fill(labels, start, start + getLength(span), (byte) getLabel(span));
+            }
+        }
+
+        return raster;
+    }
+
+    /**
+     * Get the number of pixels of each label. They are counted the first time
+     * this is called, so call it from a worker thread if the raster is big.
+     *
+     * @return the {@link RasterStats} of this raster.
+     */
+    public RasterStats getStats() {
+        if (mStats == null) {
+            mStats = RasterStats.of(this);
+        }
+
+        return mStats;
+    }
+
+    /**
+     * Approximate number of bytes held by this raster.
+     *
+     * @return the size of the arrays, in bytes.
+     */
+    public long getByteSize() {
+        return 4L * (mSpans.length + mRowOffsets.length) + 64;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Write the spans in a compact binary form, read back by
+     * {@link #read(DataInput)}.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        writeVarInt(out, mWidth);
+        writeVarInt(out, mHeight);
+        writeVarInt(out, mSpans.length);
+
+        for (int row = 0; row < mHeight; row++) {
+            writeVarInt(out, mRowOffsets[row + 1] - mRowOffsets[row]);
+
+            for (int span = mRowOffsets[row]; span < mRowOffsets[row + 1]; span++) {
+                out.writeByte(getLabel(span));
+                writeVarInt(out, getLength(span));
+            }
+        }
+    }
+
+    /**
+     * Read spans written by {@link #write(DataOutput)}.
+     *
+     * @param in
+     * @return the {@link SpanRaster} read.
+     * @throws IOException if the data is not a valid raster, including sizes
+     *                     that do not match each other
+     */
+    public static SpanRaster read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+            throw new IOException("Not a mandala raster or unsupported version");
+        }
+
+        int width = readVarInt(in);
+        int height = readVarInt(in);
+        int count = readVarInt(in);
+
+        // every row has between one span and one span per pixel
+        if (width <= 0 || width > MAX_SIZE || height <= 0 || height > MAX_SIZE || count < height
+                || count > (long) width * height) {
+            throw new IOException(String.format("Corrupted mandala raster: %dx%d with %d spans", width, height,
+                    count));
+        }
+
+        int[] rowOffsets = new int[height + 1];
+        // grown as the spans are read, the header alone is not trusted with memory
+        int[] spans = new int[Math.min(count, INITIAL_READ_SPANS)];
+        int span = 0;
+
+        for (int row = 0; row < height; row++) {
+            int spansInRow = readVarInt(in);
+            int start = 0;
+            rowOffsets[row] = span;
+
+            if (spansInRow <= 0 || spansInRow > width || spansInRow > count - span) {
+                throw new IOException("Corrupted mandala raster");
+            }
+
+            if (span + spansInRow > spans.length) {
+                spans = Arrays.copyOf(spans, (int) Math.min(count, Math.max(span + spansInRow, 2L * spans.length)));
+            }
+
+            for (int k = 0; k < spansInRow; k++) {
+                int label = in.readUnsignedByte();
+                int length = readVarInt(in);
+
+                if (length <= 0 || length > width - start) {
+                    throw new IOException("Corrupted mandala raster");
+                }
+
+                spans[span++] = start << 8 | label;
+                start += length;
+            }
+
+            if (start != width) {
+                throw new IOException("Corrupted mandala raster");
+            }
+        }
+
+        if (span != count) {
+            throw new IOException("Corrupted mandala raster");
+        }
+
+        rowOffsets[height] = span;
+
+        return new SpanRaster(width, height, rowOffsets, spans);
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Corrupted mandala raster");
+    }
+}
@@ -41,6 +41,31 @@ public class RegionSelection {
     public RegionSelection() {
     }
 
+    /**
+     * Create a selection with everything already defined.
+     * 
+     * @param center central block of the mandala
+     * @param plane  plane holding the mandala
+     * @param radius radius in blocks
+     */
+    public RegionSelection(Block center, Plane plane, int radius) {
+        mCentralBlock = center;
+        mPlane = plane;
+        mRadius = radius;
+    }
+
+    /**
+     * Create a copy of another selection.
+     * 
+     * @param other
+     */
+    public RegionSelection(RegionSelection other) {
+        mPlane = other.mPlane;
+        mCentralBlock = other.mCentralBlock;
+        mBorder = other.mBorder;
+        mRadius = other.mRadius;
+    }
+
     /**
      * Get the block set as the center of the mandala.
      * 
@@ -124,6 +149,42 @@ public class RegionSelection {
                 mCentralBlock.getX(), mCentralBlock.getY(), mCentralBlock.getZ());
     }
 
+    /**
+     * Offset, in blocks, of one step along a row of the mandala. The row is the
+     * first coordinate of the plane.
+     * 
+     * @return the x, y and z offsets.
+     */
+    public int[] getRowStep() {
+        switch (mPlane) {
+            case XY:
+                return new int[] { 1, 0, 0 };
+            case YZ:
+                return new int[] { 0, -1, 0 };
+            case XZ:
+            default:
+                return new int[] { 1, 0, 0 };
+        }
+    }
+
+    /**
+     * Offset, in blocks, of one step along a column of the mandala. The column is
+     * the second coordinate of the plane.
+     * 
+     * @return the x, y and z offsets.
+     */
+    public int[] getColStep() {
+        switch (mPlane) {
+            case XY:
+                return new int[] { 0, -1, 0 };
+            case YZ:
+                return new int[] { 0, 0, 1 };
+            case XZ:
+            default:
+                return new int[] { 0, 0, 1 };
+        }
+    }
+
     /**
      * Get the first block of the selected region which is dependente of the plane.
      * 
@@ -0,0 +1,121 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.logging.Logger;
+
+import com.wmorellato.mandalas.generation.DiskRasterCache;
+import com.wmorellato.mandalas.generation.RasterCache;
+import com.wmorellato.mandalas.raster.MandalaRaster;
+import com.wmorellato.mandalas.raster.SpanRaster;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DiskRasterCacheTest {
+    private static final int SIZE = 32;
+    private static final Logger LOGGER = Logger.getLogger("DiskRasterCacheTest");
+
+    @TempDir
+    File mFolder;
+
+    @Test
+    void shouldReadRastersAfterRestart() {
+        SpanRaster raster = createRaster();
+        RasterCache.Key key = new RasterCache.Key(42, SIZE, 8, "a");
+
+        new DiskRasterCache(mFolder, 1024 * 1024, LOGGER).put(key, raster);
+
+        DiskRasterCache cache = new DiskRasterCache(mFolder, 1024 * 1024, LOGGER);
+        SpanRaster read = cache.get(key);
+
+        assertNotNull(read, "Did not find the raster written before");
+        assertNull(cache.get(new RasterCache.Key(42, SIZE, 8, "b")), "Got a raster of another configuration");
+
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                assertEquals(raster.get(row, col), read.get(row, col), "Label changed at " + row + ", " + col);
+            }
+        }
+    }
+
+    @Test
+    void shouldDeleteLeastRecentlyUsedFiles() {
+        SpanRaster raster = createRaster();
+        DiskRasterCache cache = new DiskRasterCache(mFolder, Long.MAX_VALUE, LOGGER);
+
+        cache.put(new RasterCache.Key(1, SIZE, 8, ""), raster);
+        long fileSize = cache.getBytes();
+
+        cache = new DiskRasterCache(mFolder, fileSize * 2, LOGGER);
+        cache.put(new RasterCache.Key(2, SIZE, 8, ""), raster);
+        cache.get(new RasterCache.Key(1, SIZE, 8, ""));
+        cache.put(new RasterCache.Key(3, SIZE, 8, ""), raster);
+
+        assertEquals(2, cache.size(), "Cache went over its size limit");
+        assertEquals(2, mFolder.listFiles((dir, name) -> name.endsWith(".msr")).length, "Did not delete the file");
+        assertNotNull(cache.get(new RasterCache.Key(1, SIZE, 8, "")), "Deleted a recently used raster");
+        assertNull(cache.get(new RasterCache.Key(2, SIZE, 8, "")), "Did not delete the least recently used raster");
+    }
+
+    @Test
+    void shouldDeleteFilesThatCannotBeRead() throws IOException {
+        RasterCache.Key key = new RasterCache.Key(7, SIZE, 8, "");
+        DiskRasterCache cache = new DiskRasterCache(mFolder, 1024 * 1024, LOGGER);
+
+        cache.put(key, createRaster());
+
+        File file = mFolder.listFiles((dir, name) -> name.endsWith(".msr"))[0];
+        Files.write(file.toPath(), new byte[] { 1, 2, 3, 4 });
+
+        assertNull(cache.get(key), "Read a corrupted file");
+        assertFalse(file.exists(), "Did not delete the corrupted file");
+        assertEquals(0, cache.getBytes(), "Still counts the corrupted file");
+    }
+
+    @Test
+    void shouldDeleteTemporaryFilesOnStartup() throws IOException {
+        File temp = File.createTempFile("mandala", ".tmp", mFolder);
+        File other = new File(mFolder, "other.tmp");
+        other.createNewFile();
+
+        new DiskRasterCache(mFolder, 1024 * 1024, LOGGER);
+
+        assertFalse(temp.exists(), "Did not delete a temporary file left behind");
+        assertTrue(other.exists(), "Deleted a file that is not the cache's");
+    }
+
+    private static SpanRaster createRaster() {
+        byte[] labels = new byte[SIZE * SIZE];
+
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = (byte) (i / 7 % 4);
+        }
+
+        return SpanRaster.of(new MandalaRaster(labels, SIZE, SIZE, 0, SIZE));
+    }
+}
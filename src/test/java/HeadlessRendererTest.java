@@ -0,0 +1,74 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import com.wmorellato.mandalas.config.ConfigurationManager;
+import com.wmorellato.mandalas.generation.HeadlessRenderer;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+
+import org.junit.jupiter.api.Test;
+
+public class HeadlessRendererTest {
+
+    @Test
+    void shouldParseSeedsAndRanges() {
+        long[] seeds = HeadlessRenderer.parseSeeds("7, 1..3,-2..-1");
+        long[] last = HeadlessRenderer.parseSeeds(Long.MAX_VALUE + ".." + Long.MAX_VALUE);
+
+        assertArrayEquals(new long[] { 7, 1, 2, 3, -2, -1 }, seeds, "Did not parse the seeds in order");
+        assertArrayEquals(new long[] { Long.MAX_VALUE }, last, "Did not stop at the largest seed");
+    }
+
+    @Test
+    void shouldFailWhenTheConfigFileIsMissing() {
+        assertThrows(FileNotFoundException.class, () -> {
+            HeadlessRenderer.loadConfig(new File("./src/test/resources/missing.yml"), 1, 1);
+        });
+    }
+
+    @Test
+    void shouldReadTheBundledConfigWithoutFile() throws IOException, InvalidConfigurationException {
+        ConfigurationManager config = HeadlessRenderer.loadConfig(null, 8, 2);
+
+        assertFalse(config.getGenerationFingerprint().isEmpty(), "Did not read the mandala section");
+        assertEquals(4, config.getNumberOfRenderThreads(), "Did not split the threads between the mandalas");
+    }
+
+    @Test
+    void shouldRejectInvalidSeeds() {
+        assertThrows(IllegalArgumentException.class, () -> {
+            HeadlessRenderer.parseSeeds("1,two");
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            HeadlessRenderer.parseSeeds("5..1");
+        });
+        assertThrows(IllegalArgumentException.class, () -> {
+            HeadlessRenderer.parseSeeds(Long.MIN_VALUE + ".." + Long.MAX_VALUE);
+        });
+    }
+}
@@ -0,0 +1,92 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+
+import com.wmorellato.mandalas.generation.ImageExporter;
+import com.wmorellato.mandalas.raster.MandalaRaster;
+import com.wmorellato.mandalas.raster.SpanRaster;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ImageExporterTest {
+    private static final int SIZE = 32;
+    private static final Logger LOGGER = Logger.getLogger("ImageExporterTest");
+
+    @TempDir
+    File mFolder;
+
+    @Test
+    void shouldWriteLabelsAsPng() throws IOException {
+        SpanRaster raster = createRaster();
+        File file = new File(mFolder, "mandala.png");
+
+        ImageExporter.write(raster, file, "png", 9);
+        BufferedImage image = ImageIO.read(file);
+
+        assertNotNull(image, "Could not read the image written");
+        assertEquals(SIZE, image.getWidth(), "Incorrect width of the image");
+
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                assertEquals(raster.get(row, col), image.getRaster().getSample(col, row, 0),
+                        "Label changed at " + row + ", " + col);
+            }
+        }
+    }
+
+    @Test
+    void shouldCountEveryImage() {
+        ImageExporter exporter = new ImageExporter(new File(mFolder, "exports"), "png", 1, 1, LOGGER);
+        SpanRaster raster = createRaster();
+        int submitted = 50;
+
+        for (int i = 0; i < submitted; i++) {
+            exporter.submit("mandala_" + i, raster);
+        }
+
+        exporter.shutdown();
+
+        assertEquals(submitted, exporter.getWrittenCount() + exporter.getDroppedCount(),
+                "Images were neither written nor dropped");
+        assertEquals(exporter.getWrittenCount(), new File(mFolder, "exports").list().length,
+                "Incorrect number of files written");
+    }
+
+    private static SpanRaster createRaster() {
+        MandalaRaster raster = MandalaRaster.create(SIZE, SIZE);
+
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = row; col < SIZE; col++) {
+                raster.getLabels()[row * SIZE + col] = (byte) (1 + (row + col) % 5);
+            }
+        }
+
+        return SpanRaster.of(raster);
+    }
+}
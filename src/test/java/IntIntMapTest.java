@@ -0,0 +1,68 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.wmorellato.mandalas.raster.IntIntMap;
+
+import org.junit.jupiter.api.Test;
+
+public class IntIntMapTest {
+
+    @Test
+    void shouldPutAndGetValues() {
+        IntIntMap map = new IntIntMap();
+        map.put(3, 30);
+        map.put(-7, 70);
+
+        assertEquals(30, map.get(3, 0), "Did not get the value of a positive key");
+        assertEquals(70, map.get(-7, 0), "Did not get the value of a negative key");
+        assertEquals(-1, map.get(4, -1), "Did not get the default value of a missing key");
+        assertTrue(map.containsKey(3), "Key should be in the map");
+        assertFalse(map.containsKey(4), "Key should not be in the map");
+    }
+
+    @Test
+    void shouldKeepValuesWhenGrowing() {
+        IntIntMap map = new IntIntMap(2);
+
+        for (int i = 0; i < 1000; i++) {
+            map.add(i * 31, 1);
+            map.add(i * 31, i);
+        }
+
+        assertEquals(1000, map.size(), "Incorrect number of keys after growing");
+        assertEquals(1000, map.keys().length, "Incorrect number of keys returned");
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i + 1, map.get(i * 31, 0), "Lost the value of a key after growing");
+        }
+    }
+
+    @Test
+    void shouldRejectReservedKey() {
+        IntIntMap map = new IntIntMap();
+
+        assertThrows(IllegalArgumentException.class, () -> {
+            map.put(Integer.MIN_VALUE, 1);
+        });
+    }
+}
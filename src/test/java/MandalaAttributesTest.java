@@ -0,0 +1,96 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.HashSet;
+
+import com.wmorellato.mandalas.components.MandalaAttributes;
+
+import org.junit.jupiter.api.Test;
+
+public class MandalaAttributesTest {
+
+    @Test
+    void shouldShareGeneratorWithFirstVersion() {
+        MandalaAttributes attr = new MandalaAttributes(42, 50, 8, 3);
+
+        assertSame(attr, attr.forElement(0), "Elements should share the attributes of the mandala");
+        assertSame(attr, attr.forElement(5), "Elements should share the attributes of the mandala");
+    }
+
+    @Test
+    void shouldNotDependOnOrderOfElements() {
+        MandalaAttributes first = new MandalaAttributes(42, 50, 8, 3);
+        first.rngVersion = MandalaAttributes.RNG_PER_ELEMENT;
+        MandalaAttributes second = new MandalaAttributes(42, 50, 8, 3);
+        second.rngVersion = MandalaAttributes.RNG_PER_ELEMENT;
+
+        // draw the elements in opposite orders
+        int[] element0 = draw(first.forElement(0));
+        int[] element1 = draw(first.forElement(1));
+        int[] again1 = draw(second.forElement(1));
+        int[] again0 = draw(second.forElement(0));
+
+        assertArrayEquals(element0, again0, "Element 0 changed with the order of creation");
+        assertArrayEquals(element1, again1, "Element 1 changed with the order of creation");
+    }
+
+    @Test
+    void shouldNotOverlapSequencesOfNeighbouringElements() {
+        for (long seed : new long[] { 0, 1, 42, -1, Long.MIN_VALUE }) {
+            MandalaAttributes attr = new MandalaAttributes(seed, 50, 8, 3);
+            attr.rngVersion = MandalaAttributes.RNG_PER_ELEMENT;
+            int[] previous = draw(attr.forElement(0), 1024);
+
+            for (int element = 1; element < 16; element++) {
+                int[] current = draw(attr.forElement(element), 1024);
+                HashSet<Long> pairs = new HashSet<>();
+
+                // a sequence that is another one shifted shares its pairs of values
+                for (int i = 1; i < previous.length; i++) {
+                    pairs.add((long) previous[i - 1] << 32 | previous[i]);
+                }
+
+                for (int i = 1; i < current.length; i++) {
+                    assertFalse(pairs.contains((long) current[i - 1] << 32 | current[i]), String.format(
+                            "Elements %d and %d of seed %d share part of their sequence", element - 1, element, seed));
+                }
+
+                previous = current;
+            }
+        }
+    }
+
+    private static int[] draw(MandalaAttributes attr) {
+        return draw(attr, 16);
+    }
+
+    private static int[] draw(MandalaAttributes attr, int count) {
+        int[] values = new int[count];
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] = attr.nextInt(Integer.MAX_VALUE);
+        }
+
+        return values;
+    }
+}
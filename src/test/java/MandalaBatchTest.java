@@ -0,0 +1,81 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.wmorellato.mandalas.generation.MandalaBatch;
+import com.wmorellato.mandalas.selection.RegionSelection.Plane;
+
+import org.junit.jupiter.api.Test;
+
+public class MandalaBatchTest {
+    @Test
+    void shouldParseListsOfSeeds() {
+        assertArrayEquals(new long[] { 3, -7, 42 }, MandalaBatch.parseSeeds("3, -7,42", 10), "Read a wrong list");
+        assertArrayEquals(new long[] { 5, 6, 7 }, MandalaBatch.parseSeeds("5..7", 10), "Read a wrong range");
+        assertArrayEquals(new long[] { 5, 6 }, MandalaBatch.parseSeeds("5..7", 2), "Read more seeds than mandalas");
+        assertEquals(4, MandalaBatch.parseSeeds("RANDOM", 4).length, "Did not pick a seed for each mandala");
+    }
+
+    @Test
+    void shouldParseRangesLongerThanALong() {
+        long[] seeds = MandalaBatch.parseSeeds(Long.MIN_VALUE + ".." + Long.MAX_VALUE, 3);
+
+        assertArrayEquals(new long[] { Long.MIN_VALUE, Long.MIN_VALUE + 1, Long.MIN_VALUE + 2 }, seeds,
+                "Read a wrong range");
+    }
+
+    @Test
+    void shouldRejectInvalidSeeds() {
+        assertThrows(NumberFormatException.class, () -> MandalaBatch.parseSeeds("7..5", 10), "Read a reversed range");
+        assertThrows(NumberFormatException.class, () -> MandalaBatch.parseSeeds("1,a", 10), "Read a word as a seed");
+        assertThrows(NumberFormatException.class, () -> MandalaBatch.parseSeeds(",", 10), "Read an empty list");
+    }
+
+    @Test
+    void shouldUseSeedsInOrderAndStartOver() {
+        long[] seeds = { 10, 20, 30 };
+        long[] used = new long[7];
+
+        for (int k = 0; k < used.length; k++) {
+            used[k] = MandalaBatch.seedOf(seeds, k);
+        }
+
+        assertArrayEquals(new long[] { 10, 20, 30, 10, 20, 30, 10 }, used, "Seeds not used in order");
+    }
+
+    @Test
+    void shouldPlaceTheGridRowByRow() {
+        int[][] expected = { { 0, 0, 0 }, { 5, 0, 0 }, { 10, 0, 0 }, { 0, 0, 5 }, { 5, 0, 5 }, { 10, 0, 5 } };
+
+        for (int k = 0; k < expected.length; k++) {
+            assertArrayEquals(expected[k], MandalaBatch.gridOffset(k, 3, 5, Plane.XZ),
+                    "Wrong position of mandala " + k);
+        }
+    }
+
+    @Test
+    void shouldStackTheRowsOfWalls() {
+        // the second row, second column
+        assertArrayEquals(new int[] { 5, 5, 0 }, MandalaBatch.gridOffset(4, 3, 5, Plane.XY), "Wrong XY position");
+        assertArrayEquals(new int[] { 0, 5, 5 }, MandalaBatch.gridOffset(4, 3, 5, Plane.YZ), "Wrong YZ position");
+    }
+}
@@ -0,0 +1,72 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Point;
+
+import com.wmorellato.mandalas.drawing.PointList;
+import com.wmorellato.mandalas.drawing.PointUtils;
+
+import org.junit.jupiter.api.Test;
+
+public class PointListTest {
+
+    @Test
+    void shouldPlacePolarPointsAsBefore() {
+        PointList points = new PointList(1);
+        int cx = 500, cy = 500;
+        int i = 0;
+
+        for (int degrees = -800; degrees <= 800; degrees += 7) {
+            for (int radius : new int[] { 0, 1, 37, 499, 5000 }) {
+                points.add(0, 0);
+                points.addPolar(cx, cy, radius, degrees);
+
+                // the computation used before the table
+                int x = cx + (int) (Math.cos(Math.toRadians(degrees)) * radius);
+                int y = cy + (int) (Math.sin(Math.toRadians(degrees)) * radius);
+
+                assertEquals(x, points.getX(i + 1), "Incorrect x at " + degrees + " degrees");
+                assertEquals(y, points.getY(i + 1), "Incorrect y at " + degrees + " degrees");
+                i += 2;
+            }
+        }
+
+        assertEquals(i, points.size(), "Incorrect number of points");
+    }
+
+    @Test
+    void shouldAddSameSymmetricPoint() {
+        PointList points = new PointList();
+        int cx = 100, cy = 100;
+
+        for (int x = 0; x <= 200; x += 13) {
+            for (int y = 0; y <= 200; y += 11) {
+                Point expected = PointUtils.getSymmetricPoint(new Point(x, y), cx, cy, 22);
+
+                points.clear();
+                PointUtils.addSymmetricPoint(points, x, y, cx, cy, 22);
+
+                assertEquals(expected.x, points.getX(0), "Incorrect x of the point symmetric to " + x + ", " + y);
+                assertEquals(expected.y, points.getY(0), "Incorrect y of the point symmetric to " + x + ", " + y);
+            }
+        }
+    }
+}
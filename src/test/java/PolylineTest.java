@@ -0,0 +1,84 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.geom.Path2D;
+
+import com.wmorellato.mandalas.drawing.Polyline;
+
+import org.junit.jupiter.api.Test;
+
+public class PolylineTest {
+
+    @Test
+    void shouldDropPointsOnAStraightLine() {
+        Path2D path = new Path2D.Double();
+        path.moveTo(0, 0);
+
+        for (int i = 1; i <= 100; i++) {
+            path.lineTo(i, i % 2 == 0 ? 0 : 0.01);
+        }
+
+        Polyline polyline = Polyline.of(path, 0.1);
+
+        assertEquals(1, polyline.getSubpathCount(), "Incorrect number of subpaths");
+        assertEquals(2, polyline.getPointCount(), "Did not drop the points close to the line");
+        assertEquals(100, polyline.getX(1), "Did not keep the last point");
+    }
+
+    @Test
+    void shouldCloseSubpaths() {
+        Path2D path = new Path2D.Double();
+        path.moveTo(0, 0);
+        path.lineTo(10, 0);
+        path.lineTo(10, 10);
+        path.closePath();
+        path.moveTo(20, 20);
+        path.lineTo(30, 20);
+
+        Polyline polyline = Polyline.of(path, 0.1);
+
+        assertEquals(2, polyline.getSubpathCount(), "Incorrect number of subpaths");
+        assertEquals(4, polyline.getSubpathStart(1), "Closed subpath should end on its first point");
+        assertEquals(0, polyline.getX(3), "Closed subpath should end on its first point");
+        assertEquals(6, polyline.getPointCount(), "Incorrect number of points");
+    }
+
+    @Test
+    void shouldStayCloseToCurves() {
+        double tolerance = 0.25;
+        Path2D path = new Path2D.Double();
+        path.moveTo(0, 0);
+        path.quadTo(100, 200, 200, 0);
+
+        Polyline polyline = Polyline.of(path, tolerance);
+
+        assertTrue(polyline.getPointCount() > 2, "Did not flatten the curve");
+
+        for (int i = 0; i < polyline.getPointCount(); i++) {
+            double x = polyline.getX(i);
+            // the curve is y = x (2 - x / 100)
+            double y = x * (2 - x / 100);
+
+            assertEquals(y, polyline.getY(i), tolerance, "Point is too far from the curve");
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import com.wmorellato.mandalas.config.ConfigurationManager;
+import com.wmorellato.mandalas.generation.PregenerationPool;
+import com.wmorellato.mandalas.raster.MandalaRaster;
+import com.wmorellato.mandalas.raster.SpanRaster;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+
+public class PregenerationPoolTest {
+    private static final Logger LOGGER = Logger.getLogger("PregenerationPoolTest");
+    private static final int RADIUS = 10;
+    private static final int SECTIONS = 8;
+
+    @Test
+    void shouldNotGoOverItsMemoryLimit() throws InterruptedException {
+        SpanRaster raster = createRaster();
+        long maxBytes = 1024 * 1024;
+        AtomicBoolean otherThread = new AtomicBoolean(false);
+        PregenerationPool pool = new PregenerationPool(null, createConfig(10, 4), attr -> {
+            if (!Thread.currentThread().getName().startsWith("Mandalas-Pregen-")) {
+                otherThread.set(true);
+            }
+
+            return raster;
+        }, () -> true, LOGGER);
+
+        for (int i = 0; i < 20; i++) {
+            pool.run();
+
+            assertTrue(pool.getBytes() <= maxBytes, "Went over the memory limit while generating");
+            waitForWorkers(pool);
+        }
+
+        assertEquals(maxBytes / raster.getByteSize(), pool.size(), "Did not fill the pool up to its memory limit");
+        assertTrue(pool.getBytes() <= maxBytes, "Went over the memory limit");
+        assertTrue(!otherThread.get(), "Generated a mandala outside of the threads of the pool");
+
+        pool.shutdown();
+    }
+
+    @Test
+    void shouldOnlyGenerateWhileTheServerIsIdle() throws InterruptedException {
+        AtomicBoolean idle = new AtomicBoolean(false);
+        AtomicInteger rendered = new AtomicInteger();
+        SpanRaster raster = createRaster();
+        PregenerationPool pool = new PregenerationPool(null, createConfig(2, 1), attr -> {
+            rendered.incrementAndGet();
+            return raster;
+        }, idle::get, LOGGER);
+
+        pool.run();
+        waitForWorkers(pool);
+        assertEquals(0, rendered.get(), "Generated a mandala while the server was busy");
+
+        idle.set(true);
+
+        for (int i = 0; i < 4; i++) {
+            pool.run();
+            waitForWorkers(pool);
+        }
+
+        assertEquals(2, rendered.get(), "Did not fill the pool once the server was idle");
+        assertEquals(2, pool.size(), "Did not keep the mandalas generated");
+
+        pool.shutdown();
+    }
+
+    private static ConfigurationManager createConfig(int perSize, int workers) {
+        YamlConfiguration fc = YamlConfiguration.loadConfiguration(new File("./src/test/resources/config.yml"));
+
+        fc.set("mandala.sections", SECTIONS);
+        fc.set("generation.pregeneration.per_size", perSize);
+        fc.set("generation.pregeneration.workers", workers);
+        fc.set("generation.pregeneration.memory_mb", 1);
+        fc.set("generation.pregeneration.radii", Arrays.asList(RADIUS));
+
+        return new ConfigurationManager(fc);
+    }
+
+    private static void waitForWorkers(PregenerationPool pool) throws InterruptedException {
+        while (pool.getPending() > 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Raster of about 400 KB, so only two fit in the memory of the pools.
+     */
+    private static SpanRaster createRaster() {
+        int width = 500, height = 200;
+        byte[] labels = new byte[width * height];
+
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = (byte) (i % 2);
+        }
+
+        return SpanRaster.of(new MandalaRaster(labels, width, height, 0, width));
+    }
+}
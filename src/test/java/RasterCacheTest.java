@@ -0,0 +1,86 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.wmorellato.mandalas.generation.RasterCache;
+import com.wmorellato.mandalas.raster.MandalaRaster;
+import com.wmorellato.mandalas.raster.SpanRaster;
+
+import org.junit.jupiter.api.Test;
+
+public class RasterCacheTest {
+    private static final int SIZE = 16;
+
+    @Test
+    void shouldCountHitsAndMisses() {
+        RasterCache cache = new RasterCache(1024 * 1024);
+        SpanRaster raster = createRaster();
+
+        assertNull(cache.get(new RasterCache.Key(1, 10, 8, "a")), "Empty cache returned a raster");
+
+        cache.put(new RasterCache.Key(1, 10, 8, "a"), raster);
+
+        assertSame(raster, cache.get(new RasterCache.Key(1, 10, 8, "a")), "Did not get the cached raster");
+        assertNull(cache.get(new RasterCache.Key(1, 10, 8, "b")), "Got a raster of another configuration");
+        assertNull(cache.get(new RasterCache.Key(1, 10, 16, "a")), "Got a raster with other sections");
+        assertEquals(1, cache.getHits(), "Incorrect number of hits");
+        assertEquals(3, cache.getMisses(), "Incorrect number of misses");
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsed() {
+        SpanRaster raster = createRaster();
+        RasterCache cache = new RasterCache(raster.getByteSize() * 2);
+
+        cache.put(new RasterCache.Key(1, 10, 8, ""), raster);
+        cache.put(new RasterCache.Key(2, 10, 8, ""), raster);
+        cache.get(new RasterCache.Key(1, 10, 8, ""));
+        cache.put(new RasterCache.Key(3, 10, 8, ""), raster);
+
+        assertEquals(2, cache.size(), "Cache went over its memory limit");
+        assertEquals(1, cache.getEvictions(), "Incorrect number of evictions");
+        assertNotNull(cache.get(new RasterCache.Key(1, 10, 8, "")), "Evicted a recently used raster");
+        assertNull(cache.get(new RasterCache.Key(2, 10, 8, "")), "Did not evict the least recently used raster");
+        assertEquals(raster.getByteSize() * 2, cache.getBytes(), "Incorrect size of the cache");
+    }
+
+    @Test
+    void shouldNotKeepRastersBiggerThanTheCache() {
+        SpanRaster raster = createRaster();
+        RasterCache cache = new RasterCache(raster.getByteSize() - 1);
+
+        cache.put(new RasterCache.Key(1, 10, 8, ""), raster);
+
+        assertEquals(0, cache.size(), "Kept a raster bigger than the cache");
+    }
+
+    private static SpanRaster createRaster() {
+        byte[] labels = new byte[SIZE * SIZE];
+
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = (byte) (i % 3);
+        }
+
+        return SpanRaster.of(new MandalaRaster(labels, SIZE, SIZE, 0, SIZE));
+    }
+}
@@ -0,0 +1,196 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+
+import com.wmorellato.mandalas.placement.ChunkPreloader;
+import com.wmorellato.mandalas.placement.RegionBackup;
+
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.BlockData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RegionBackupTest {
+    private static final int SIZE = 20;
+    private static final int Y = 64;
+
+    @TempDir
+    File mFolder;
+
+    @Test
+    void shouldKeepEveryBlock() throws IOException {
+        RegionBackup backup = capture();
+
+        assertEquals(SIZE * SIZE, cells(backup).length, "Incorrect number of cells");
+        assertBlocks(backup);
+        assertTrue(backup.getByteSize() < SIZE * 4 * 3, "Runs of equal blocks were not merged");
+    }
+
+    @Test
+    void shouldReadSpilledRuns() throws IOException {
+        RegionBackup backup = capture();
+        backup.spill(new File(mFolder, "backup.bin"));
+
+        assertTrue(backup.isSpilled(), "Runs were not moved to disk");
+        assertBlocks(backup);
+
+        backup.discard();
+
+        assertEquals(0, mFolder.listFiles().length, "Did not delete the spilled runs");
+    }
+
+    @Test
+    void shouldCopyVerticalPlanes() throws IOException {
+        // rows along x and columns going down, the blocks only depend on x
+        String[] cells = cells(capture(new int[] { 1, 0, 0 }, new int[] { 0, -1, 0 }, 0));
+
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                assertEquals(expected(row, 0), cells[row * SIZE + col], "Block changed at " + row + ", " + col);
+            }
+        }
+    }
+
+    /**
+     * Stone on the first rows, a diagonal of glass and air everywhere else.
+     */
+    private static String expected(int x, int z) {
+        if (x < 3) {
+            return "minecraft:stone";
+        }
+
+        return x == z ? "minecraft:glass" : "minecraft:air";
+    }
+
+    private static void assertBlocks(RegionBackup backup) throws IOException {
+        String[] cells = cells(backup);
+
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                assertEquals(expected(row, col), cells[row * SIZE + col], "Block changed at " + row + ", " + col);
+            }
+        }
+    }
+
+    private static String[] cells(RegionBackup backup) throws IOException {
+        int[] runs = backup.decodeRuns();
+        int count = 0;
+
+        for (int i = 1; i < runs.length; i += 2) {
+            count += runs[i];
+        }
+
+        String[] cells = new String[count];
+        int cell = 0;
+
+        for (int i = 0; i < runs.length; i += 2) {
+            for (int k = 0; k < runs[i + 1]; k++) {
+                cells[cell++] = backup.getPaletteEntry(runs[i]);
+            }
+        }
+
+        return cells;
+    }
+
+    private static RegionBackup capture() {
+        return capture(new int[] { 1, 0, 0 }, new int[] { 0, 0, 1 }, SIZE - 1);
+    }
+
+    private static RegionBackup capture(int[] rowStep, int[] colStep, int maxZ) {
+        World world = proxy(World.class, (p, method, args) -> {
+            switch (method.getName()) {
+                case "getChunkAt":
+                    return chunk((int) args[0], (int) args[1]);
+                case "getMaxHeight":
+                    return 256;
+                case "addPluginChunkTicket":
+                    return true;
+                case "getUID":
+                    return new UUID(0, 0);
+                default:
+                    return null;
+            }
+        });
+        Block first = proxy(Block.class, (p, method, args) -> {
+            switch (method.getName()) {
+                case "getY":
+                    return Y;
+                case "getX":
+                case "getZ":
+                    return 0;
+                default:
+                    return null;
+            }
+        });
+
+        ChunkPreloader chunks = new ChunkPreloader(null, world, 0, 0, SIZE - 1, maxZ);
+        chunks.takeSnapshots(first, rowStep, colStep, SIZE);
+
+        // one chunk per call, as the placement does
+        while (!chunks.loadNext(1)) {
+        }
+
+        return RegionBackup.capture(chunks.getSnapshot(), world, first, rowStep, colStep, SIZE);
+    }
+
+    private static Chunk chunk(int chunkX, int chunkZ) {
+        // snapshots take coordinates inside the chunk
+        ChunkSnapshot snapshot = proxy(ChunkSnapshot.class, (p, method, args) -> {
+            if (method.getName().equals("getBlockData")) {
+                return blockData(expected(chunkX * 16 + (int) args[0], chunkZ * 16 + (int) args[2]));
+            }
+
+            return null;
+        });
+
+        return proxy(Chunk.class, (p, method, args) -> snapshot);
+    }
+
+    private static BlockData blockData(String data) {
+        return proxy(BlockData.class, (p, method, args) -> {
+            switch (method.getName()) {
+                case "getAsString":
+                case "toString":
+                    return data;
+                case "hashCode":
+                    return data.hashCode();
+                case "equals":
+                    return args[0] instanceof BlockData && data.equals(((BlockData) args[0]).getAsString());
+                default:
+                    return null;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+}
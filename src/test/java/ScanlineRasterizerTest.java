@@ -0,0 +1,100 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+
+import com.wmorellato.mandalas.drawing.ScanlineRasterizer;
+
+import org.junit.jupiter.api.Test;
+
+public class ScanlineRasterizerTest {
+    private static final int SIZE = 8;
+
+    @Test
+    void shouldStrokeLines() {
+        byte[] pixels = new byte[SIZE * SIZE];
+        ScanlineRasterizer rasterizer = new ScanlineRasterizer(pixels, 0, SIZE, SIZE, SIZE);
+        Path2D path = new Path2D.Double();
+        path.moveTo(1, 2);
+        path.lineTo(6, 2);
+        path.moveTo(0, 0);
+        path.lineTo(7, 7);
+
+        rasterizer.setLabel(5);
+        rasterizer.stroke(path.getPathIterator(null));
+
+        for (int col = 1; col <= 6; col++) {
+            assertEquals(5, pixels[2 * SIZE + col], "Horizontal line is missing column " + col);
+        }
+
+        for (int i = 0; i < SIZE; i++) {
+            assertEquals(5, pixels[i * SIZE + i], "Diagonal line is missing pixel " + i);
+        }
+
+        assertEquals(6 + SIZE - 1, count(pixels), "Incorrect number of pixels drawn");
+    }
+
+    @Test
+    void shouldClipToTheBuffer() {
+        byte[] pixels = new byte[SIZE * SIZE];
+        ScanlineRasterizer rasterizer = new ScanlineRasterizer(pixels, 0, SIZE, SIZE, SIZE);
+        Path2D path = new Path2D.Double();
+        path.moveTo(-100, 3);
+        path.quadTo(50, -40, 100, 3);
+
+        rasterizer.setOrigin(2, 0);
+        rasterizer.stroke(path.getPathIterator(null));
+
+        assertEquals(0, count(pixels), "Drew a curve that is out of the buffer");
+
+        path.reset();
+        path.moveTo(-100, 3);
+        path.lineTo(100, 3);
+        rasterizer.stroke(path.getPathIterator(null));
+
+        assertEquals(SIZE, count(pixels), "Did not clip the line to the width of the buffer");
+    }
+
+    @Test
+    void shouldFillPixelCentersInside() {
+        byte[] pixels = new byte[SIZE * SIZE];
+        ScanlineRasterizer rasterizer = new ScanlineRasterizer(pixels, 0, SIZE, SIZE, SIZE);
+
+        rasterizer.fillEvenOdd(new Rectangle2D.Double(1.5, 1.5, 4, 3).getPathIterator(null));
+
+        assertEquals(4 * 3, count(pixels), "Incorrect number of pixels filled");
+        assertEquals(1, pixels[1 * SIZE + 1], "First pixel inside was not filled");
+        assertEquals(1, pixels[3 * SIZE + 4], "Last pixel inside was not filled");
+        assertEquals(0, pixels[4 * SIZE + 5], "Pixel outside was filled");
+    }
+
+    private static int count(byte[] pixels) {
+        int count = 0;
+
+        for (byte pixel : pixels) {
+            if (pixel != 0) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+}
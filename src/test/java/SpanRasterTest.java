@@ -0,0 +1,130 @@
+/**
+Mandalas is an open-source Minecraft plugin.
+Copyright (C) 2020  Wesley Morellato
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <https://www.gnu.org/licenses/>.
+**/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import com.wmorellato.mandalas.raster.MandalaRaster;
+import com.wmorellato.mandalas.raster.SpanRaster;
+
+import org.junit.jupiter.api.Test;
+
+public class SpanRasterTest {
+    private static final int SIZE = 5;
+
+    // rows: background, one run, alternating labels, single label, wide label
+    private static final byte[] LABELS = {
+        0, 0, 0, 0, 0,
+        0, 3, 3, 3, 0,
+        1, 2, 1, 2, 1,
+        7, 7, 7, 7, 7,
+        0, 0, (byte) 255, (byte) 255, 0 };
+
+    @Test
+    void shouldKeepEveryLabel() {
+        MandalaRaster raster = new MandalaRaster(LABELS, SIZE, SIZE, 0, SIZE);
+        SpanRaster spans = SpanRaster.of(raster);
+
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                assertEquals(raster.get(row, col), spans.get(row, col), "Label changed at " + row + ", " + col);
+            }
+        }
+
+        assertEquals(1 + 3 + 5 + 1 + 3, spans.getSpanCount(), "Incorrect number of spans");
+        assertEquals(3, spans.getLength(spans.getFirstSpan(1) + 1), "Incorrect length of a span");
+        assertEquals(10, spans.getStats().getBackgroundCount(), "Incorrect number of background pixels");
+        assertEquals(2, spans.getStats().getLabelCount(255), "Incorrect number of pixels of the last label");
+    }
+
+    @Test
+    void shouldMergeSpansOfTiles() {
+        SpanRaster whole = SpanRaster.of(new MandalaRaster(LABELS, SIZE, SIZE, 0, SIZE));
+        SpanRaster.Builder builder = new SpanRaster.Builder(SIZE, SIZE);
+        int tile = 2;
+
+        for (int row = 0; row < SIZE; row += tile) {
+            for (int col = 0; col < SIZE; col += tile) {
+                builder.addTile(new MandalaRaster(LABELS, Math.min(tile, SIZE - col), Math.min(tile, SIZE - row),
+                        row * SIZE + col, SIZE), row, col);
+            }
+        }
+
+        SpanRaster tiled = builder.build();
+
+        assertEquals(whole.getSpanCount(), tiled.getSpanCount(), "Spans were not merged across tiles");
+
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                assertEquals(whole.get(row, col), tiled.get(row, col), "Label changed at " + row + ", " + col);
+            }
+        }
+    }
+
+    @Test
+    void shouldReadWhatWasWritten() throws IOException {
+        SpanRaster spans = SpanRaster.of(new MandalaRaster(LABELS, SIZE, SIZE, 0, SIZE));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        spans.write(new DataOutputStream(bytes));
+
+        SpanRaster read = SpanRaster.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(spans.getSpanCount(), read.getSpanCount(), "Incorrect number of spans read");
+
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                assertEquals(spans.get(row, col), read.get(row, col), "Label changed at " + row + ", " + col);
+            }
+        }
+    }
+
+    @Test
+    void shouldRejectInvalidData() {
+        byte[] garbage = { 1, 2, 3, 4, 5, 6, 7, 8 };
+
+        assertThrows(IOException.class, () -> {
+            SpanRaster.read(new DataInputStream(new ByteArrayInputStream(garbage)));
+        });
+    }
+
+    @Test
+    void shouldRejectSizesThatDoNotMatch() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SpanRaster.of(new MandalaRaster(LABELS, SIZE, SIZE, 0, SIZE)).write(new DataOutputStream(bytes));
+
+        // after the magic and the version come the width, the height and the count
+        byte[] moreSpans = bytes.toByteArray();
+        moreSpans[7]++;
+        byte[] noWidth = bytes.toByteArray();
+        noWidth[5] = 0;
+        byte[] brokenCount = bytes.toByteArray();
+        brokenCount[7] = (byte) 0xff;
+
+        for (byte[] data : new byte[][] { moreSpans, noWidth, brokenCount }) {
+            assertThrows(IOException.class, () -> {
+                SpanRaster.read(new DataInputStream(new ByteArrayInputStream(data)));
+            });
+        }
+    }
+}